@@ -17,6 +17,7 @@
 package com.webauthn4j.springframework.security.fido.server.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.springframework.security.util.internal.ExactPathRequestMatcher;
 import com.webauthn4j.springframework.security.util.internal.ExceptionUtil;
 import com.webauthn4j.util.exception.WebAuthnException;
 import org.springframework.context.support.MessageSourceAccessor;
@@ -24,6 +25,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.SpringSecurityMessageSource;
 import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
 import org.springframework.web.filter.GenericFilterBean;
 
@@ -46,12 +48,14 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
      * Url this filter should get activated on.
      */
     private String filterProcessesUrl;
+    private RequestMatcher requestMatcher;
 
 
     public ServerEndpointFilterBase(
             String filterProcessesUrl,
             ObjectConverter objectConverter) {
         this.filterProcessesUrl = filterProcessesUrl;
+        this.requestMatcher = new ExactPathRequestMatcher(filterProcessesUrl);
         this.objectConverter = objectConverter;
         this.serverEndpointFilterUtil = new ServerEndpointFilterUtil(this.objectConverter);
         checkConfig();
@@ -73,6 +77,10 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         FilterInvocation fi = new FilterInvocation(request, response, chain);
+        if (!processFilter(fi.getRequest())) {
+            chain.doFilter(request, response);
+            return;
+        }
         try {
             HttpServletRequest httpServletRequest = fi.getRequest();
             HttpServletResponse httpServletResponse = fi.getResponse();
@@ -80,11 +88,6 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
                 throw new AuthenticationServiceException("Authentication method not supported: " + httpServletRequest.getMethod());
             }
 
-            if (!processFilter(httpServletRequest)) {
-                chain.doFilter(request, response);
-                return;
-            }
-
             try {
                 ServerResponse serverResponse = processRequest(httpServletRequest);
                 serverEndpointFilterUtil.writeResponse(httpServletResponse, serverResponse);
@@ -100,13 +103,13 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
     protected abstract ServerResponse processRequest(HttpServletRequest request);
 
     /**
-     * The filter will be used in case the URL of the request contains the FILTER_URL.
+     * The filter will be used in case the request URI matches the FILTER_URL exactly.
      *
      * @param request request used to determine whether to enable this filter
      * @return true if this filter should be used
      */
     private boolean processFilter(HttpServletRequest request) {
-        return (request.getRequestURI().contains(filterProcessesUrl));
+        return requestMatcher != null && requestMatcher.matches(request);
     }
 
     public String getFilterProcessesUrl() {
@@ -116,6 +119,7 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
     public void setFilterProcessesUrl(String filterProcessesUrl) {
         Assert.hasText(filterProcessesUrl, "filterProcessesUrl parameter must not be empty or null");
         this.filterProcessesUrl = filterProcessesUrl;
+        this.requestMatcher = new ExactPathRequestMatcher(filterProcessesUrl);
     }
 
 }
@@ -43,9 +43,7 @@ class ServerEndpointFilterUtil {
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, ServerResponse response) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(response);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        writeJson(httpServletResponse, response);
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
@@ -61,10 +59,15 @@ class ServerEndpointFilterUtil {
             errorResponse = new ErrorResponse("The server encountered an internal error");
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        writeJson(httpServletResponse, errorResponse);
+    }
+
+    private void writeJson(HttpServletResponse httpServletResponse, Object value) throws IOException {
+        byte[] bytes = jsonConverter.writeValueAsBytes(value);
+        httpServletResponse.setContentType("application/json");
+        httpServletResponse.setContentLength(bytes.length);
+        httpServletResponse.getOutputStream().write(bytes);
     }
 
     Challenge encodeUsername(Challenge challenge, String username) {
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webauthn4j.springframework.security;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.springframework.security.exception.*;
+import com.webauthn4j.util.MessageDigestUtil;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * A {@link WebAuthnAuthenticationPreVerifier} which checks the type, the challenge and the origin of the client data,
+ * and the rpIdHash of the authenticator data, against the {@link ServerProperty}.
+ * <p>
+ * These checks are repeated by the full verification; they only make requests failing them cheap to reject.
+ * The rpIdHash is not checked when the client extensions mention appid, as the hash of the appid is then accepted too.
+ */
+public class DefaultWebAuthnAuthenticationPreVerifier implements WebAuthnAuthenticationPreVerifier {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int RP_ID_HASH_LENGTH = 32;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private volatile RpIdHash lastRpIdHash;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public DefaultWebAuthnAuthenticationPreVerifier(ObjectConverter objectConverter) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void preVerify(WebAuthnAuthenticationRequest request, WebAuthnAuthenticationParameters parameters) {
+        ServerProperty serverProperty = parameters.getServerProperty();
+        if (serverProperty == null) {
+            return;
+        }
+        verifyRpIdHash(request, serverProperty);
+        verifyClientData(request, serverProperty);
+    }
+
+    private void verifyRpIdHash(WebAuthnAuthenticationRequest request, ServerProperty serverProperty) {
+        String clientExtensionsJSON = request.getClientExtensionsJSON();
+        if (serverProperty.getRpId() == null || (clientExtensionsJSON != null && clientExtensionsJSON.contains("appid"))) {
+            return;
+        }
+        byte[] authenticatorData = request.getAuthenticatorData();
+        if (authenticatorData == null || authenticatorData.length < RP_ID_HASH_LENGTH) {
+            throw new DataConversionException("WebAuthn data conversion error");
+        }
+        byte[] expected = getRpIdHash(serverProperty.getRpId());
+        if (!MessageDigest.isEqual(Arrays.copyOf(authenticatorData, RP_ID_HASH_LENGTH), expected)) {
+            throw new BadRpIdException("rpIdHash doesn't match the hash of preconfigured rpId.");
+        }
+    }
+
+    private void verifyClientData(WebAuthnAuthenticationRequest request, ServerProperty serverProperty) {
+        CollectedClientData collectedClientData;
+        try {
+            collectedClientData = collectedClientDataConverter.convert(request.getClientDataJSON());
+        } catch (com.webauthn4j.converter.exception.DataConversionException | IllegalArgumentException e) {
+            throw new DataConversionException("WebAuthn data conversion error", e);
+        }
+        if (collectedClientData == null) {
+            throw new DataConversionException("WebAuthn data conversion error");
+        }
+        if (collectedClientData.getType() != ClientDataType.WEBAUTHN_GET) {
+            throw new InconsistentClientDataTypeException("ClientData.type must be 'webauthn.get' on authentication, but it isn't.");
+        }
+
+        Challenge expectedChallenge = serverProperty.getChallenge();
+        if (expectedChallenge == null) {
+            throw new MissingChallengeException("Missing server challenge");
+        }
+        Challenge challenge = collectedClientData.getChallenge();
+        if (challenge == null || !MessageDigest.isEqual(expectedChallenge.getValue(), challenge.getValue())) {
+            throw new BadChallengeException("The provided challenge does not match the expected challenge");
+        }
+
+        if (serverProperty.getOrigins() != null && !serverProperty.getOrigins().contains(collectedClientData.getOrigin())) {
+            throw new BadOriginException("The collectedClientData '" + collectedClientData.getOrigin() + "' origin doesn't match any of the preconfigured origins.");
+        }
+    }
+
+    private byte[] getRpIdHash(String rpId) {
+        RpIdHash rpIdHash = lastRpIdHash;
+        if (rpIdHash == null || !rpIdHash.rpId.equals(rpId)) {
+            rpIdHash = new RpIdHash(rpId, MessageDigestUtil.createSHA256().digest(rpId.getBytes(StandardCharsets.UTF_8)));
+            lastRpIdHash = rpIdHash;
+        }
+        return rpIdHash.hash;
+    }
+
+    private static class RpIdHash {
+
+        private final String rpId;
+        private final byte[] hash;
+
+        RpIdHash(String rpId, byte[] hash) {
+            this.rpId = rpId;
+            this.hash = hash;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webauthn4j.springframework.security;
+
+/**
+ * Checks a WebAuthn authentication request against the {@link WebAuthnAuthenticationParameters} before the credential
+ * record is retrieved, so that requests which can be rejected without the store do not reach it.
+ */
+public interface WebAuthnAuthenticationPreVerifier {
+
+    /**
+     * Verifies the request without accessing the credential store
+     *
+     * @param request    authentication request
+     * @param parameters authentication parameters
+     * @throws org.springframework.security.core.AuthenticationException if the request is rejected
+     */
+    void preVerify(WebAuthnAuthenticationRequest request, WebAuthnAuthenticationParameters parameters);
+
+}
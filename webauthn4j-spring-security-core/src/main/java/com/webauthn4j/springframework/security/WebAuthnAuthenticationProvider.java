@@ -19,9 +19,13 @@ package com.webauthn4j.springframework.security;
 import com.webauthn4j.WebAuthnManager;
 import com.webauthn4j.data.AuthenticationParameters;
 import com.webauthn4j.data.AuthenticationRequest;
+import com.webauthn4j.springframework.security.credential.PublicKeyCache;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
 import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.exception.MaliciousCounterValueException;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.util.internal.ExceptionUtil;
 import com.webauthn4j.util.exception.WebAuthnException;
 import org.apache.commons.logging.Log;
@@ -51,6 +55,10 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
     private final WebAuthnCredentialRecordService webAuthnCredentialRecordService;
     private final WebAuthnManager webAuthnManager;
     private boolean hideCredentialIdNotFoundExceptions = true;
+    private PublicKeyCache publicKeyCache;
+    private WebAuthnAuthenticationPreVerifier preVerifier;
+    private WebAuthnMetrics metrics = new NoOpWebAuthnMetrics();
+    private boolean stackTraceEnabled = true;
 
     // ~ Constructor
     // ========================================================================================================
@@ -89,15 +97,44 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
                     "Bad credentials"));
         }
 
+        if (preVerifier != null && authenticationToken.getParameters() != null) {
+            preVerifier.preVerify(credentials, authenticationToken.getParameters());
+        }
+
         byte[] credentialId = credentials.getCredentialId();
-        WebAuthnCredentialRecord webAuthnCredentialRecord = retrieveCredentialRecord(credentialId);
+        WebAuthnCredentialRecord webAuthnCredentialRecord = metrics.record(WebAuthnMetrics.AUTHENTICATION_RETRIEVE_CREDENTIAL_RECORD,
+                () -> retrieveCredentialRecord(credentialId));
+        long storedCounter = webAuthnCredentialRecord.getCounter();
 
-        doAuthenticate(authenticationToken, webAuthnCredentialRecord);
-        webAuthnCredentialRecordService.updateCounter(credentialId, webAuthnCredentialRecord.getCounter());
+        metrics.record(WebAuthnMetrics.AUTHENTICATION_VERIFY, () -> doAuthenticate(authenticationToken, webAuthnCredentialRecord));
+        metrics.record(WebAuthnMetrics.AUTHENTICATION_UPDATE_COUNTER,
+                () -> updateCounter(credentialId, storedCounter, webAuthnCredentialRecord.getCounter()));
 
         return createSuccessAuthentication(authenticationToken, webAuthnCredentialRecord);
     }
 
+    /**
+     * Persists the counter verified by {@link #doAuthenticate(WebAuthnAssertionAuthenticationToken, WebAuthnCredentialRecord)}.
+     * If the counter is advanced, it is written conditionally, so that only one of concurrent authentications presenting
+     * the same counter, e.g. by a cloned authenticator, succeeds.
+     *
+     * @param credentialId  credentialId
+     * @param storedCounter counter stored before the verification
+     * @param counter       counter after the verification
+     */
+    void updateCounter(byte[] credentialId, long storedCounter, long counter) {
+        if (counter > storedCounter) {
+            if (!webAuthnCredentialRecordService.updateCounterIfGreater(credentialId, counter)) {
+                logger.debug("Authentication failed: signature counter has been advanced by a concurrent authentication");
+                throw new MaliciousCounterValueException(messages.getMessage(
+                        "WebAuthnAuthenticationProvider.maliciousCounterValue",
+                        "Signature counter has been advanced by a concurrent authentication"));
+            }
+        } else {
+            webAuthnCredentialRecordService.updateCounter(credentialId, counter);
+        }
+    }
+
     protected Authentication createSuccessAuthentication(WebAuthnAssertionAuthenticationToken authenticationToken, WebAuthnCredentialRecord webAuthnCredentialRecord) {
         Object principal = webAuthnCredentialRecord.getUserPrincipal();
         Collection<? extends GrantedAuthority> authorities = null;
@@ -133,9 +170,10 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
                 request.getClientExtensionsJSON(),
                 request.getSignature()
         );
+        WebAuthnCredentialRecord verifiedCredentialRecord = publicKeyCache == null ? webAuthnCredentialRecord : publicKeyCache.wrap(webAuthnCredentialRecord);
         AuthenticationParameters authenticationParameters = new AuthenticationParameters(
                 parameters.getServerProperty(),
-                webAuthnCredentialRecord,
+                verifiedCredentialRecord,
                 null,
                 parameters.isUserVerificationRequired(),
                 parameters.isUserPresenceRequired()
@@ -144,7 +182,10 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         try {
             webAuthnManager.verify(authenticationRequest, authenticationParameters);
         } catch (WebAuthnException e) {
-            throw ExceptionUtil.wrapWithAuthenticationException(e);
+            throw ExceptionUtil.wrapWithAuthenticationException(e, stackTraceEnabled);
+        }
+        if (verifiedCredentialRecord != webAuthnCredentialRecord) {
+            webAuthnCredentialRecord.setCounter(verifiedCredentialRecord.getCounter());
         }
 
     }
@@ -169,6 +210,63 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         this.hideCredentialIdNotFoundExceptions = hideCredentialIdNotFoundExceptions;
     }
 
+    public PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    /**
+     * Sets the cache of public keys decoded from the COSE keys of credential records.
+     * If not set, the public key is decoded on every verification.
+     *
+     * @param publicKeyCache public key cache
+     */
+    public void setPublicKeyCache(PublicKeyCache publicKeyCache) {
+        this.publicKeyCache = publicKeyCache;
+    }
+
+    public WebAuthnAuthenticationPreVerifier getPreVerifier() {
+        return preVerifier;
+    }
+
+    /**
+     * Sets the verifier run before the credential record is retrieved, so that requests which fail storage-free checks
+     * are rejected without touching the credential store. If not set, every request reaches the store.
+     *
+     * @param preVerifier pre-verifier
+     */
+    public void setPreVerifier(WebAuthnAuthenticationPreVerifier preVerifier) {
+        this.preVerifier = preVerifier;
+    }
+
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the credential record retrieval, the verification and the counter
+     * update. By default, nothing is recorded.
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public boolean isStackTraceEnabled() {
+        return stackTraceEnabled;
+    }
+
+    /**
+     * Sets whether the WebAuthn exceptions thrown on verification failures capture their stack trace. The webauthn4j
+     * exception they wrap keeps its own. Enabled by default.
+     *
+     * @param stackTraceEnabled false to throw exceptions without stack trace
+     */
+    public void setStackTraceEnabled(boolean stackTraceEnabled) {
+        this.stackTraceEnabled = stackTraceEnabled;
+    }
+
     WebAuthnCredentialRecord retrieveCredentialRecord(byte[] credentialId) {
         WebAuthnCredentialRecord webAuthnCredentialRecord;
         try {
@@ -17,6 +17,8 @@
 package com.webauthn4j.springframework.security;
 
 import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.server.ServerPropertyProvider;
 import com.webauthn4j.util.Base64UrlUtil;
 import jakarta.servlet.http.HttpServletRequest;
@@ -77,6 +79,7 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
 
     private ServerPropertyProvider serverPropertyProvider;
     private UserVerificationStrategy userVerificationStrategy;
+    private WebAuthnMetrics metrics = new NoOpWebAuthnMetrics();
 
     private boolean postOnly = true;
 
@@ -126,6 +129,12 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
 
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
+        // exposes the response to challenge repositories which write to it, as the options endpoint filters do
+        request.setAttribute(HttpServletResponse.class.getName(), response);
+        return metrics.record(WebAuthnMetrics.AUTHENTICATION, () -> doAttemptAuthentication(request));
+    }
+
+    private Authentication doAttemptAuthentication(HttpServletRequest request) {
         if (postOnly && !HttpMethod.POST.matches(request.getMethod())) {
             throw new AuthenticationServiceException(
                     "Authentication method not supported: " + request.getMethod());
@@ -156,25 +165,10 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
             return this.getAuthenticationManager().authenticate(authRequest);
         }
         else {
-            String clientDataJSON = obtainClientDataJSON(request);
-            String authenticatorData = obtainAuthenticatorData(request);
-            String signature = obtainSignatureData(request);
-            String clientExtensionsJSON = obtainClientExtensionsJSON(request);
-
-            byte[] rawId = Base64UrlUtil.decode(credentialId);
-            byte[] rawClientData = Base64UrlUtil.decode(clientDataJSON);
-            byte[] rawAuthenticatorData = Base64UrlUtil.decode(authenticatorData);
-            byte[] signatureBytes = Base64UrlUtil.decode(signature);
-
-            ServerProperty serverProperty = serverPropertyProvider.provide(request);
-
-            WebAuthnAuthenticationRequest webAuthnAuthenticationRequest = new WebAuthnAuthenticationRequest(
-                    rawId,
-                    rawClientData,
-                    rawAuthenticatorData,
-                    signatureBytes,
-                    clientExtensionsJSON
-            );
+            WebAuthnAuthenticationRequest webAuthnAuthenticationRequest = metrics.record(WebAuthnMetrics.AUTHENTICATION_DECODE, () -> createAuthenticationRequest(request, credentialId));
+
+            ServerProperty serverProperty = metrics.record(WebAuthnMetrics.AUTHENTICATION_SERVER_PROPERTY, () -> serverPropertyProvider.provide(request));
+
             WebAuthnAuthenticationParameters webAuthnAuthenticationParameters = new WebAuthnAuthenticationParameters(
                     serverProperty,
                     userVerificationStrategy.isUserVerificationRequired(),
@@ -189,6 +183,21 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
         }
     }
 
+    private WebAuthnAuthenticationRequest createAuthenticationRequest(HttpServletRequest request, String credentialId) {
+        String clientDataJSON = obtainClientDataJSON(request);
+        String authenticatorData = obtainAuthenticatorData(request);
+        String signature = obtainSignatureData(request);
+        String clientExtensionsJSON = obtainClientExtensionsJSON(request);
+
+        return new WebAuthnAuthenticationRequest(
+                Base64UrlUtil.decode(credentialId),
+                Base64UrlUtil.decode(clientDataJSON),
+                Base64UrlUtil.decode(authenticatorData),
+                Base64UrlUtil.decode(signature),
+                clientExtensionsJSON
+        );
+    }
+
     /**
      * Defines whether only HTTP POST requests will be allowed by this filter. If set to
      * true, and an authentication request is received which is not a POST request, an
@@ -266,6 +275,21 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
         this.userVerificationStrategy = userVerificationStrategy;
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the authentication attempts, the parameter decoding and the
+     * {@link ServerProperty} provision. By default, nothing is recorded.
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
     protected void setDetails(HttpServletRequest request,
                               AbstractAuthenticationToken authRequest) {
         authRequest.setDetails(authenticationDetailsSource.buildDetails(request));
@@ -21,6 +21,8 @@ import com.webauthn4j.data.RegistrationData;
 import com.webauthn4j.data.RegistrationParameters;
 import com.webauthn4j.data.RegistrationRequest;
 import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.server.ServerPropertyProvider;
 import com.webauthn4j.springframework.security.util.internal.ExceptionUtil;
 import com.webauthn4j.util.Base64UrlUtil;
@@ -37,6 +39,8 @@ public class WebAuthnRegistrationRequestValidator {
     // ================================================================================================
     private final WebAuthnManager webAuthnManager;
     private final ServerPropertyProvider serverPropertyProvider;
+    private WebAuthnMetrics metrics = new NoOpWebAuthnMetrics();
+    private boolean stackTraceEnabled = true;
 
     // ~ Constructors
     // ===================================================================================================
@@ -72,6 +76,15 @@ public class WebAuthnRegistrationRequestValidator {
             transports.forEach(transport -> Assert.hasText(transport, "each transport must have text"));
         }
 
+        return metrics.record(WebAuthnMetrics.REGISTRATION_VALIDATE,
+                () -> doValidate(httpServletRequest, clientDataBase64url, attestationObjectBase64url, transports, clientExtensionsJSON));
+    }
+
+    private WebAuthnRegistrationRequestValidationResponse doValidate(HttpServletRequest httpServletRequest,
+                                                                     String clientDataBase64url,
+                                                                     String attestationObjectBase64url,
+                                                                     Set<String> transports,
+                                                                     String clientExtensionsJSON) {
         RegistrationRequest webAuthnRegistrationRequest =
                 createRegistrationRequest(clientDataBase64url, attestationObjectBase64url, transports, clientExtensionsJSON);
         RegistrationParameters webAuthnRegistrationParameters =
@@ -85,10 +98,38 @@ public class WebAuthnRegistrationRequestValidator {
                     response.getClientExtensions(),
                     response.getTransports());
         } catch (WebAuthnException e) {
-            throw ExceptionUtil.wrapWithAuthenticationException(e);
+            throw ExceptionUtil.wrapWithAuthenticationException(e, stackTraceEnabled);
         }
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the validations. By default, nothing is recorded.
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public boolean isStackTraceEnabled() {
+        return stackTraceEnabled;
+    }
+
+    /**
+     * Sets whether the WebAuthn exceptions thrown on validation failures capture their stack trace. The webauthn4j
+     * exception they wrap keeps its own. Enabled by default.
+     *
+     * @param stackTraceEnabled false to throw exceptions without stack trace
+     */
+    public void setStackTraceEnabled(boolean stackTraceEnabled) {
+        this.stackTraceEnabled = stackTraceEnabled;
+    }
+
     RegistrationRequest createRegistrationRequest(String clientDataBase64,
                                                   String attestationObjectBase64,
                                                   Set<String> transports,
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.anchor;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.springframework.security.util.internal.BoundedCache;
+import com.webauthn4j.verifier.attestation.trustworthiness.certpath.CertPathTrustworthinessVerifier;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link CertPathTrustworthinessVerifier} decorator which memoizes successful certification path validations.
+ * <p>
+ * Results are keyed by the SHA-256 hash of the attestation certificate chain, the AAGUID and the version of the trust
+ * anchors, so that a trust anchor reload invalidates them, and are bounded in size and time-to-live. A cached result
+ * is used only if the timestamp falls within the validity periods of the certificates of the chain. Failed
+ * validations are not cached. As revocation is not re-checked while a result is cached, the time-to-live bounds the
+ * delay before a revocation takes effect.
+ * <p>
+ * The trust anchor version supplier is required, so that a reload cannot silently leave results validated against
+ * removed trust anchors in the cache. For a {@link CertFileResourcesTrustAnchorRepository}, pass the repository, whose
+ * {@link CertFileResourcesTrustAnchorRepository#getVersion()} is used. For trust anchors which never change, pass a
+ * constant supplier.
+ */
+public class CachingCertPathTrustworthinessVerifier implements CertPathTrustworthinessVerifier {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CertPathTrustworthinessVerifier delegate;
+    private final BoundedCache<ByteBuffer, Validity> cache;
+    private final LongSupplier trustAnchorVersionSupplier;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param delegate                   the verifier whose successful validations are cached
+     * @param trustAnchorVersionSupplier supplier of the trust anchor version, which is part of the cache key
+     * @param maximumSize                maximum number of cached results
+     * @param timeToLive                 time-to-live of a cached result
+     */
+    public CachingCertPathTrustworthinessVerifier(CertPathTrustworthinessVerifier delegate, LongSupplier trustAnchorVersionSupplier, int maximumSize, Duration timeToLive) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(trustAnchorVersionSupplier, "trustAnchorVersionSupplier must not be null");
+        this.delegate = delegate;
+        this.trustAnchorVersionSupplier = trustAnchorVersionSupplier;
+        this.cache = new BoundedCache<>(maximumSize, timeToLive);
+    }
+
+    public CachingCertPathTrustworthinessVerifier(CertPathTrustworthinessVerifier delegate, LongSupplier trustAnchorVersionSupplier) {
+        this(delegate, trustAnchorVersionSupplier, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor which invalidates the cached results on each reload of the trust anchor repository
+     *
+     * @param delegate              the verifier whose successful validations are cached
+     * @param trustAnchorRepository the trust anchor repository used by the delegate
+     */
+    public CachingCertPathTrustworthinessVerifier(CertPathTrustworthinessVerifier delegate, CertFileResourcesTrustAnchorRepository trustAnchorRepository) {
+        this(delegate, versionSupplierOf(trustAnchorRepository));
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void verify(AAGUID aaguid, CertificateBaseAttestationStatement attestationStatement, Instant timestamp) {
+        List<X509Certificate> certificates = attestationStatement.getX5c();
+        if (certificates == null || certificates.isEmpty()) {
+            delegate.verify(aaguid, attestationStatement, timestamp);
+            return;
+        }
+        ByteBuffer key = createKey(aaguid, certificates, trustAnchorVersionSupplier.getAsLong());
+        Validity validity = cache.get(key);
+        if (validity != null && validity.contains(timestamp)) {
+            return;
+        }
+        delegate.verify(aaguid, attestationStatement, timestamp);
+        cache.put(key, Validity.of(certificates));
+    }
+
+    /**
+     * Discards all cached results
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    private static LongSupplier versionSupplierOf(CertFileResourcesTrustAnchorRepository trustAnchorRepository) {
+        Assert.notNull(trustAnchorRepository, "trustAnchorRepository must not be null");
+        return trustAnchorRepository::getVersion;
+    }
+
+    private static ByteBuffer createKey(AAGUID aaguid, List<X509Certificate> certificates, long trustAnchorVersion) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate certificate : certificates) {
+                byte[] encoded = certificate.getEncoded();
+                messageDigest.update(ByteBuffer.allocate(Integer.BYTES).putInt(encoded.length).array());
+                messageDigest.update(encoded);
+            }
+            if (aaguid != null) {
+                messageDigest.update(aaguid.getBytes());
+            }
+            messageDigest.update(ByteBuffer.allocate(Long.BYTES).putLong(trustAnchorVersion).array());
+            return ByteBuffer.wrap(messageDigest.digest());
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Validity {
+
+        private final Instant notBefore;
+        private final Instant notAfter;
+
+        private Validity(Instant notBefore, Instant notAfter) {
+            this.notBefore = notBefore;
+            this.notAfter = notAfter;
+        }
+
+        static Validity of(List<X509Certificate> certificates) {
+            Instant notBefore = Instant.MIN;
+            Instant notAfter = Instant.MAX;
+            for (X509Certificate certificate : certificates) {
+                Instant certificateNotBefore = certificate.getNotBefore().toInstant();
+                Instant certificateNotAfter = certificate.getNotAfter().toInstant();
+                notBefore = certificateNotBefore.isAfter(notBefore) ? certificateNotBefore : notBefore;
+                notAfter = certificateNotAfter.isBefore(notAfter) ? certificateNotAfter : notAfter;
+            }
+            return new Validity(notBefore, notAfter);
+        }
+
+        boolean contains(Instant timestamp) {
+            return !timestamp.isBefore(notBefore) && !timestamp.isAfter(notAfter);
+        }
+    }
+
+}
@@ -20,26 +20,58 @@ import com.webauthn4j.anchor.TrustAnchorRepository;
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
 import com.webauthn4j.util.AssertUtil;
 import com.webauthn4j.util.CertificateUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An implementation of {@link com.webauthn4j.anchor.TrustAnchorRepository} that loads {@link TrustAnchor}(s) from X.509 certificate file in Spring {@link Resource}
+ * <p>
+ * Certificates are parsed once into an immutable snapshot, indexed by the AAGUID carried in the FIDO AAGUID extension
+ * (1.3.6.1.4.1.45724.1.1.4). Certificates without the AAGUID extension, such as root certificates, are returned for
+ * every AAGUID lookup; certificates with it are returned only for their AAGUID. Lookups by attestation certificate key
+ * identifier, used for FIDO U2F, return every certificate: the key identifier is the one of the attestation
+ * certificate, which the trust anchors, its issuers, do not carry.
+ * <p>
+ * The modification times of the resources are checked at most once per reload check interval, on lookup, and the
+ * snapshot is replaced atomically when one has changed. Resources without a modification time, such as in-memory
+ * ones, are never reloaded.
  */
 public class CertFileResourcesTrustAnchorRepository implements TrustAnchorRepository, InitializingBean {
 
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String AAGUID_EXTENSION_OID = "1.3.6.1.4.1.45724.1.1.4";
+    private static final Duration DEFAULT_RELOAD_CHECK_INTERVAL = Duration.ofSeconds(5);
+
     // ~ Instance fields
     // ================================================================================================
 
+    private final Log logger = LogFactory.getLog(getClass());
+
     private List<Resource> certificates;
+    private Duration reloadCheckInterval = DEFAULT_RELOAD_CHECK_INTERVAL;
+    private volatile Snapshot snapshot;
+    private final AtomicLong version = new AtomicLong();
 
     // ~ Constructor
     // ========================================================================================================
@@ -65,14 +97,15 @@ public class CertFileResourcesTrustAnchorRepository implements TrustAnchorReposi
 
     @Override
     public Set<TrustAnchor> find(AAGUID aaguid) {
-        checkConfig();
-        return certificates.stream().map(this::loadTrustAnchor).collect(Collectors.toSet());
+        Snapshot current = getSnapshot();
+        Set<TrustAnchor> trustAnchors = aaguid == null ? null : current.byAAGUID.get(aaguid);
+        return trustAnchors == null ? current.common : trustAnchors;
     }
 
     @Override
     public Set<TrustAnchor> find(byte[] bytes) {
-        checkConfig();
-        return certificates.stream().map(this::loadTrustAnchor).collect(Collectors.toSet());
+        Snapshot current = getSnapshot();
+        return current.all;
     }
 
 
@@ -83,15 +116,159 @@ public class CertFileResourcesTrustAnchorRepository implements TrustAnchorReposi
 
     public void setCertificates(List<Resource> certificates) {
         this.certificates = certificates;
+        this.snapshot = null;
     }
 
-    TrustAnchor loadTrustAnchor(Resource certificate) {
+    public Duration getReloadCheckInterval() {
+        return reloadCheckInterval;
+    }
+
+    /**
+     * Sets the minimum interval between two checks of the modification times of the certificate resources.
+     * If null, the certificates are loaded once and never reloaded.
+     *
+     * @param reloadCheckInterval reload check interval
+     */
+    public void setReloadCheckInterval(Duration reloadCheckInterval) {
+        Assert.isTrue(reloadCheckInterval == null || !reloadCheckInterval.isNegative(), "reloadCheckInterval must not be negative");
+        this.reloadCheckInterval = reloadCheckInterval;
+    }
+
+    /**
+     * Returns the version of the snapshot, incremented each time the certificates are (re)loaded, so that results
+     * derived from the trust anchors can be invalidated on reload.
+     *
+     * @return snapshot version
+     */
+    public long getVersion() {
+        return getSnapshot().version;
+    }
+
+    /**
+     * Parses the certificate resources, and replaces the snapshot
+     */
+    public synchronized void reload() {
+        checkConfig();
+        this.snapshot = createSnapshot(certificates);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    reload();
+                    current = snapshot;
+                }
+            }
+        } else {
+            Duration interval = reloadCheckInterval;
+            if (interval != null && System.nanoTime() - current.checkedAt >= interval.toNanos()) {
+                current = reloadIfModified(current, interval);
+            }
+        }
+        return current;
+    }
+
+    private synchronized Snapshot reloadIfModified(Snapshot current, Duration interval) {
+        if (snapshot != current || System.nanoTime() - current.checkedAt < interval.toNanos()) {
+            return snapshot;
+        }
+        current.checkedAt = System.nanoTime();
+        if (Arrays.equals(current.lastModified, getLastModified(current.resources))) {
+            return current;
+        }
         try {
-            X509Certificate x509Certificate = CertificateUtil.generateX509Certificate(certificate.getInputStream());
+            snapshot = createSnapshot(current.resources);
+            logger.debug("Reloaded trust anchor certificates");
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reload trust anchor certificates, previous ones are kept", e);
+        }
+        return snapshot;
+    }
+
+    private Snapshot createSnapshot(List<Resource> resources) {
+        List<Resource> resourcesCopy = new ArrayList<>(resources);
+        long[] lastModified = getLastModified(resourcesCopy);
+
+        Set<TrustAnchor> all = new HashSet<>();
+        Set<TrustAnchor> common = new HashSet<>();
+        Map<AAGUID, Set<TrustAnchor>> specificByAAGUID = new HashMap<>();
+        for (Resource resource : resourcesCopy) {
+            TrustAnchor trustAnchor = loadTrustAnchor(resource);
+            AAGUID aaguid = extractAAGUID(trustAnchor.getTrustedCert());
+            if (aaguid == null) {
+                common.add(trustAnchor);
+            } else {
+                specificByAAGUID.computeIfAbsent(aaguid, key -> new HashSet<>()).add(trustAnchor);
+            }
+            all.add(trustAnchor);
+        }
+
+        Map<AAGUID, Set<TrustAnchor>> byAAGUID = new HashMap<>();
+        specificByAAGUID.forEach((aaguid, trustAnchors) -> byAAGUID.put(aaguid, union(common, trustAnchors)));
+        return new Snapshot(version.incrementAndGet(), resourcesCopy, lastModified, Collections.unmodifiableSet(all), Collections.unmodifiableSet(common), byAAGUID);
+    }
+
+    TrustAnchor loadTrustAnchor(Resource certificate) {
+        try (InputStream inputStream = certificate.getInputStream()) {
+            X509Certificate x509Certificate = CertificateUtil.generateX509Certificate(inputStream);
             return new TrustAnchor(x509Certificate, null);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    private static Set<TrustAnchor> union(Set<TrustAnchor> common, Set<TrustAnchor> specific) {
+        Set<TrustAnchor> union = new HashSet<>(common);
+        union.addAll(specific);
+        return Collections.unmodifiableSet(union);
+    }
+
+    private static long[] getLastModified(List<Resource> resources) {
+        long[] lastModified = new long[resources.size()];
+        for (int i = 0; i < lastModified.length; i++) {
+            try {
+                lastModified[i] = resources.get(i).lastModified();
+            } catch (IOException e) {
+                // resources without a modification time, e.g. in-memory ones, are never reloaded
+                lastModified[i] = -1;
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Extracts the AAGUID from the FIDO AAGUID extension, an OCTET STRING wrapping a 16 bytes OCTET STRING
+     */
+    static AAGUID extractAAGUID(X509Certificate certificate) {
+        byte[] value = certificate.getExtensionValue(AAGUID_EXTENSION_OID);
+        if (value == null || value.length != 20 || value[0] != 0x04 || value[1] != 18 || value[2] != 0x04 || value[3] != 16) {
+            return null;
+        }
+        return new AAGUID(Arrays.copyOfRange(value, 4, 20));
+    }
+
+    private static class Snapshot {
+
+        private final long version;
+        private final List<Resource> resources;
+        private final long[] lastModified;
+        private final Set<TrustAnchor> all;
+        private final Set<TrustAnchor> common;
+        private final Map<AAGUID, Set<TrustAnchor>> byAAGUID;
+        private volatile long checkedAt = System.nanoTime();
+
+        Snapshot(long version, List<Resource> resources, long[] lastModified, Set<TrustAnchor> all, Set<TrustAnchor> common,
+                 Map<AAGUID, Set<TrustAnchor>> byAAGUID) {
+            this.version = version;
+            this.resources = resources;
+            this.lastModified = lastModified;
+            this.all = all;
+            this.common = common;
+            this.byAAGUID = byAAGUID;
+        }
+    }
+
 }
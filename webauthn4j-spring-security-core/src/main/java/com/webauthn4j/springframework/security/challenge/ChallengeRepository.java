@@ -56,6 +56,22 @@ public interface ChallengeRepository {
      */
     Challenge loadChallenge(HttpServletRequest request);
 
+    /**
+     * Loads the expected {@link Challenge} from the {@link HttpServletRequest} and removes it, so that it cannot be
+     * used again. Implementations should perform the load and the removal atomically. The default implementation
+     * combines {@link #loadChallenge(HttpServletRequest)} and {@link #saveChallenge(Challenge, HttpServletRequest)}.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    default Challenge loadAndRemoveChallenge(HttpServletRequest request) {
+        Challenge challenge = this.loadChallenge(request);
+        if (challenge != null) {
+            this.saveChallenge(null, request);
+        }
+        return challenge;
+    }
+
     /**
      * Loads or generates {@link Challenge} from the {@link HttpServletRequest}
      *
@@ -22,6 +22,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
 import org.springframework.util.Assert;
+import org.springframework.web.util.WebUtils;
 
 
 /**
@@ -71,6 +72,28 @@ public class HttpSessionChallengeRepository implements ChallengeRepository {
         return (Challenge) session.getAttribute(this.sessionAttributeName);
     }
 
+    /**
+     * Loads and removes the {@link Challenge} while holding the session mutex, so that concurrent requests
+     * of the same session cannot both obtain it
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    @Override
+    public Challenge loadAndRemoveChallenge(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        synchronized (WebUtils.getSessionMutex(session)) {
+            Challenge challenge = (Challenge) session.getAttribute(this.sessionAttributeName);
+            if (challenge != null) {
+                session.removeAttribute(this.sessionAttributeName);
+            }
+            return challenge;
+        }
+    }
+
     /**
      * Sets the {@link HttpSession} attribute name that the {@link Challenge} is stored in
      *
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.WebUtils;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A node-local {@link ChallengeRepository} implementation that stores challenges in memory, keyed by an opaque
+ * request id.
+ * <p>
+ * The request id is sent to the client in a cookie and a response header, and is read back from the header or,
+ * if absent, from the cookie. Challenges expire after a hard time-to-live, and {@link #loadAndRemoveChallenge(HttpServletRequest)}
+ * consumes a challenge atomically, so that it cannot be replayed. Expired challenges are swept by a hashed timer wheel
+ * advanced on access, and the number of stored challenges is bounded by evicting the ones closest to expiry.
+ * <p>
+ * The request id can only be written when the {@link HttpServletResponse} is exposed as a request attribute named
+ * after its class name, as the endpoint filters of this library do. As challenges are not shared between nodes,
+ * requests of a ceremony must be routed to the same node.
+ */
+public class InMemoryChallengeRepository implements ChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final String DEFAULT_COOKIE_NAME = "WEBAUTHN-CHALLENGE-ID";
+    static final String DEFAULT_HEADER_NAME = "X-WEBAUTHN-CHALLENGE-ID";
+    private static final int DEFAULT_MAXIMUM_SIZE = 100000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    private static final Duration TICK_DURATION = Duration.ofSeconds(1);
+    private static final String REQUEST_ID_ATTR_NAME = InMemoryChallengeRepository.class.getName().concat(".REQUEST_ID");
+
+    //~ Instance fields
+    // ================================================================================================
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentMap<String, Entry> challenges = new ConcurrentHashMap<>();
+    private final Set<String>[] wheel;
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    private final int maximumSize;
+    private final long timeToLiveMillis;
+    private final long tickMillis = TICK_DURATION.toMillis();
+    private volatile long sweptTick = -1;
+    private String cookieName = DEFAULT_COOKIE_NAME;
+    private String headerName = DEFAULT_HEADER_NAME;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize maximum number of stored challenges
+     * @param timeToLive  time-to-live of a challenge
+     */
+    @SuppressWarnings("unchecked")
+    public InMemoryChallengeRepository(int maximumSize, Duration timeToLive) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+        Assert.notNull(timeToLive, "timeToLive must not be null");
+        Assert.isTrue(timeToLive.compareTo(TICK_DURATION) >= 0, "timeToLive must be at least " + TICK_DURATION);
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        // one revolution covers the time-to-live, so that a slot only holds challenges expiring in the same tick
+        int slots = (int) (timeToLiveMillis / tickMillis) + 2;
+        this.wheel = new Set[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public InMemoryChallengeRepository() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        return new DefaultChallenge();
+    }
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        long now = clock.millis();
+        advance(now);
+        String previousRequestId = getRequestId(request);
+        if (previousRequestId != null) {
+            remove(previousRequestId);
+        }
+        if (challenge == null) {
+            request.setAttribute(REQUEST_ID_ATTR_NAME, "");
+            writeRequestId(request, null);
+            return;
+        }
+        while (challenges.size() >= maximumSize) {
+            evictClosestToExpiry();
+        }
+        String requestId = generateRequestId();
+        long deadline = now + timeToLiveMillis;
+        challenges.put(requestId, new Entry(challenge, deadline));
+        wheel[slotOf(deadline)].add(requestId);
+        request.setAttribute(REQUEST_ID_ATTR_NAME, requestId);
+        writeRequestId(request, requestId);
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        String requestId = getRequestId(request);
+        if (requestId == null) {
+            return null;
+        }
+        long now = clock.millis();
+        advance(now);
+        Entry entry = challenges.get(requestId);
+        return entry == null || entry.isExpired(now) ? null : entry.challenge;
+    }
+
+    /**
+     * Loads and removes the {@link Challenge} in a single atomic step, so that concurrent requests presenting
+     * the same request id cannot both obtain it
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    @Override
+    public Challenge loadAndRemoveChallenge(HttpServletRequest request) {
+        String requestId = getRequestId(request);
+        if (requestId == null) {
+            return null;
+        }
+        long now = clock.millis();
+        advance(now);
+        Entry entry = remove(requestId);
+        return entry == null || entry.isExpired(now) ? null : entry.challenge;
+    }
+
+    /**
+     * Returns the number of stored challenges, including expired ones not swept yet
+     *
+     * @return number of stored challenges
+     */
+    public int size() {
+        return challenges.size();
+    }
+
+    public void setCookieName(String cookieName) {
+        Assert.hasLength(cookieName, "cookieName cannot be null or empty");
+        this.cookieName = cookieName;
+    }
+
+    public void setHeaderName(String headerName) {
+        Assert.hasLength(headerName, "headerName cannot be null or empty");
+        this.headerName = headerName;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    private String getRequestId(HttpServletRequest request) {
+        String requestId = (String) request.getAttribute(REQUEST_ID_ATTR_NAME);
+        if (requestId == null) {
+            requestId = request.getHeader(headerName);
+        }
+        if (requestId == null) {
+            Cookie cookie = WebUtils.getCookie(request, cookieName);
+            requestId = cookie == null ? null : cookie.getValue();
+        }
+        return StringUtils.hasLength(requestId) ? requestId : null;
+    }
+
+    private void writeRequestId(HttpServletRequest request, String requestId) {
+        HttpServletResponse response = (HttpServletResponse) request.getAttribute(HttpServletResponse.class.getName());
+        if (response == null) {
+            return;
+        }
+        Cookie cookie = new Cookie(cookieName, requestId == null ? "" : requestId);
+        String contextPath = request.getContextPath();
+        cookie.setPath(StringUtils.hasLength(contextPath) ? contextPath : "/");
+        cookie.setSecure(request.isSecure());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(requestId == null ? 0 : (int) (timeToLiveMillis / 1000));
+        response.addCookie(cookie);
+        if (requestId != null) {
+            response.setHeader(headerName, requestId);
+        }
+    }
+
+    private String generateRequestId() {
+        byte[] bytes = new byte[16];
+        secureRandom.nextBytes(bytes);
+        return Base64UrlUtil.encodeToString(bytes);
+    }
+
+    private Entry remove(String requestId) {
+        Entry entry = challenges.remove(requestId);
+        if (entry != null) {
+            wheel[slotOf(entry.deadline)].remove(requestId);
+        }
+        return entry;
+    }
+
+    private int slotOf(long deadline) {
+        return (int) ((deadline / tickMillis) % wheel.length);
+    }
+
+    /**
+     * Sweeps the slots of the ticks fully elapsed since the last sweep, whose challenges have all expired.
+     * Each tick is swept once, and at most one revolution is swept per call. If another thread is sweeping,
+     * the call returns immediately.
+     */
+    private void advance(long now) {
+        long elapsedTick = now / tickMillis - 1;
+        if (elapsedTick <= sweptTick || !wheelLock.tryLock()) {
+            return;
+        }
+        try {
+            long from = Math.max(sweptTick + 1, elapsedTick - wheel.length + 1);
+            for (long tick = from; tick <= elapsedTick; tick++) {
+                sweep(wheel[(int) (tick % wheel.length)], now);
+            }
+            sweptTick = elapsedTick;
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    private void sweep(Set<String> slot, long now) {
+        for (String requestId : slot) {
+            Entry entry = challenges.get(requestId);
+            if (entry == null) {
+                slot.remove(requestId);
+            } else if (entry.isExpired(now) && challenges.remove(requestId, entry)) {
+                slot.remove(requestId);
+            }
+        }
+    }
+
+    private void evictClosestToExpiry() {
+        long nowTick = clock.millis() / tickMillis;
+        for (int i = 0; i < wheel.length; i++) {
+            Set<String> slot = wheel[(int) ((nowTick + i) % wheel.length)];
+            for (String requestId : slot) {
+                remove(requestId);
+                if (challenges.size() < maximumSize) {
+                    return;
+                }
+            }
+        }
+        // slots are out of sync with the map only transiently, so the map is trimmed directly as a last resort
+        challenges.keySet().stream().findAny().ifPresent(this::remove);
+    }
+
+    private static class Entry {
+
+        private final Challenge challenge;
+        private final long deadline;
+
+        Entry(Challenge challenge, long deadline) {
+            this.challenge = challenge;
+            this.deadline = deadline;
+        }
+
+        boolean isExpired(long now) {
+            return now >= deadline;
+        }
+    }
+
+}
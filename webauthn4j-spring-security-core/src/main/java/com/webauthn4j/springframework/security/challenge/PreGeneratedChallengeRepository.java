@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A {@link ChallengeRepository} decorator which hands out challenges generated in advance.
+ * <p>
+ * Challenges are generated by a background thread in batches, each batch drawing its random bytes from
+ * {@link SecureRandom} in a single call, and are kept in a lock-free pool. {@link #generateChallenge()} takes
+ * a challenge from the pool in constant time, and generates one synchronously if the pool is empty. The pool is
+ * refilled when it falls below half of its capacity. The first fill is started from {@link #afterPropertiesSet()}.
+ * Storage of challenges is delegated.
+ */
+public class PreGeneratedChallengeRepository implements ChallengeRepository, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int CHALLENGE_LENGTH = 16;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final ChallengeRepository delegate;
+    private final int capacity;
+    private final Queue<Challenge> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicBoolean refillRequested = new AtomicBoolean(false);
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ExecutorService executorService;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public PreGeneratedChallengeRepository(ChallengeRepository delegate, int capacity) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(capacity > 0, "capacity must be positive");
+        this.delegate = delegate;
+        this.capacity = capacity;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-challenge-generator-");
+        threadFactory.setDaemon(true);
+        this.executorService = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    public PreGeneratedChallengeRepository(ChallengeRepository delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Starts filling the pool in the background
+     */
+    @Override
+    public void afterPropertiesSet() {
+        requestRefill();
+    }
+
+    @Override
+    public Challenge generateChallenge() {
+        Challenge challenge = pool.poll();
+        if (challenge == null) {
+            requestRefill();
+            return new DefaultChallenge();
+        }
+        if (poolSize.decrementAndGet() < capacity / 2) {
+            requestRefill();
+        }
+        return challenge;
+    }
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        delegate.saveChallenge(challenge, request);
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        return delegate.loadChallenge(request);
+    }
+
+    @Override
+    public Challenge loadAndRemoveChallenge(HttpServletRequest request) {
+        return delegate.loadAndRemoveChallenge(request);
+    }
+
+    /**
+     * Returns the number of challenges available in the pool
+     *
+     * @return number of pooled challenges
+     */
+    public int getPoolSize() {
+        return poolSize.get();
+    }
+
+    /**
+     * Stops the background generation
+     */
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Fills the pool up to its capacity. The size is reserved before the challenges are offered, so that it never
+     * falls below the number of pooled challenges.
+     */
+    synchronized void refill() {
+        refillRequested.set(false);
+        int count = capacity - poolSize.get();
+        if (count <= 0) {
+            return;
+        }
+        byte[] bytes = new byte[count * CHALLENGE_LENGTH];
+        secureRandom.nextBytes(bytes);
+        poolSize.addAndGet(count);
+        for (int i = 0; i < count; i++) {
+            pool.offer(new DefaultChallenge(Arrays.copyOfRange(bytes, i * CHALLENGE_LENGTH, (i + 1) * CHALLENGE_LENGTH)));
+        }
+    }
+
+    private void requestRefill() {
+        if (refillRequested.compareAndSet(false, true)) {
+            try {
+                executorService.execute(this::refillQuietly);
+            } catch (RejectedExecutionException e) {
+                // shut down; challenges are generated synchronously from now on
+                refillRequested.set(false);
+            }
+        }
+    }
+
+    private void refillQuietly() {
+        try {
+            refill();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to pre-generate challenges", e);
+        }
+    }
+
+}
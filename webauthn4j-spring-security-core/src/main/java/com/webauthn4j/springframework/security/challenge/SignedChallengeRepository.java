@@ -0,0 +1,299 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.WebUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A {@link ChallengeRepository} implementation that keeps no server-side state.
+ * <p>
+ * The challenge is carried by a token, {@code <keyId>.<challenge>.<expiresAt>.<mac>}, signed with HMAC-SHA256,
+ * which is sent to the client in a cookie and a response header. The challenge is loaded back from the header or,
+ * if absent, from the cookie, after the signature and the expiry are verified. Tokens are signed with the current
+ * signing key and verified with any registered key, so that keys can be rotated without invalidating tokens
+ * in flight.
+ * <p>
+ * As no state is kept, a token can be presented again until it expires. Keep the time-to-live short. For the same
+ * reason, {@link #loadOrGenerateChallenge(HttpServletRequest)} always issues a fresh challenge rather than reissuing
+ * the one of the token presented, so that each ceremony gets its own challenge.
+ * <p>
+ * The token can only be written when the {@link HttpServletResponse} is exposed as a request attribute named after
+ * its class name, as the endpoint filters and the processing filter of this library do. Controllers which save a
+ * challenge must expose it as well, otherwise {@link #saveChallenge(Challenge, HttpServletRequest)} throws an
+ * {@link IllegalStateException}. Class design is based on {@link CookieCsrfTokenRepository}
+ */
+public class SignedChallengeRepository implements ChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final String DEFAULT_COOKIE_NAME = "WEBAUTHN-CHALLENGE";
+    static final String DEFAULT_HEADER_NAME = "X-WEBAUTHN-CHALLENGE";
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String TOKEN_ATTR_NAME = SignedChallengeRepository.class.getName().concat(".TOKEN");
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Map<String, SecretKeySpec> keys = new ConcurrentHashMap<>();
+    private volatile String signingKeyId;
+    private String cookieName = DEFAULT_COOKIE_NAME;
+    private String headerName = DEFAULT_HEADER_NAME;
+    private String cookiePath;
+    private Duration timeToLive = DEFAULT_TIME_TO_LIVE;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param signingKeyId id of the signing key, embedded in tokens
+     * @param signingKey   HMAC key, at least 32 bytes
+     */
+    public SignedChallengeRepository(String signingKeyId, byte[] signingKey) {
+        addKey(signingKeyId, signingKey);
+        this.signingKeyId = signingKeyId;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        return new DefaultChallenge();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the {@link HttpServletResponse} is not exposed as a request attribute
+     */
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        HttpServletResponse response = getResponse(request);
+        if (response == null) {
+            throw new IllegalStateException("The challenge cannot be written, as the HttpServletResponse is not exposed as the '"
+                    + HttpServletResponse.class.getName() + "' request attribute");
+        }
+        writeToken(challenge == null ? null : createToken(challenge), request, response);
+    }
+
+    /**
+     * Loads the challenge, and clears the cookie if the {@link HttpServletResponse} is exposed. As no state is kept,
+     * the token itself cannot be revoked.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    @Override
+    public Challenge loadAndRemoveChallenge(HttpServletRequest request) {
+        Challenge challenge = loadChallenge(request);
+        if (challenge != null) {
+            writeToken(null, request, getResponse(request));
+        }
+        return challenge;
+    }
+
+    /**
+     * Always generates and saves a fresh challenge, as a challenge loaded from a token could be reissued to every
+     * ceremony until the token expires
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the generated {@link Challenge}
+     */
+    @Override
+    public Challenge loadOrGenerateChallenge(HttpServletRequest request) {
+        Challenge challenge = generateChallenge();
+        saveChallenge(challenge, request);
+        return challenge;
+    }
+
+    private void writeToken(String token, HttpServletRequest request, HttpServletResponse response) {
+        request.setAttribute(TOKEN_ATTR_NAME, token == null ? "" : token);
+        if (response == null) {
+            return;
+        }
+        Cookie cookie = new Cookie(cookieName, token == null ? "" : token);
+        cookie.setPath(getCookiePath(request));
+        cookie.setSecure(request.isSecure());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(token == null ? 0 : (int) timeToLive.getSeconds());
+        response.addCookie(cookie);
+        if (token != null) {
+            response.setHeader(headerName, token);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        String token = (String) request.getAttribute(TOKEN_ATTR_NAME);
+        if (token == null) {
+            token = request.getHeader(headerName);
+        }
+        if (token == null) {
+            Cookie cookie = WebUtils.getCookie(request, cookieName);
+            token = cookie == null ? null : cookie.getValue();
+        }
+        if (!StringUtils.hasLength(token)) {
+            return null;
+        }
+        return verifyToken(token);
+    }
+
+    /**
+     * Registers a key used to verify tokens. Keys of tokens still in flight must be kept registered after rotation.
+     *
+     * @param keyId key id
+     * @param key   HMAC key, at least 32 bytes
+     */
+    public void addKey(String keyId, byte[] key) {
+        Assert.hasText(keyId, "keyId must not be empty");
+        Assert.isTrue(keyId.indexOf('.') < 0, "keyId must not contain '.'");
+        Assert.notNull(key, "key must not be null");
+        Assert.isTrue(key.length >= 32, "key must be at least 32 bytes");
+        keys.put(keyId, new SecretKeySpec(key, MAC_ALGORITHM));
+    }
+
+    /**
+     * Unregisters a key. Tokens signed with the key are no longer accepted.
+     *
+     * @param keyId key id
+     */
+    public void removeKey(String keyId) {
+        Assert.isTrue(!keyId.equals(signingKeyId), "the signing key cannot be removed");
+        keys.remove(keyId);
+    }
+
+    /**
+     * Switches the key used to sign new tokens
+     *
+     * @param signingKeyId id of a registered key
+     */
+    public void setSigningKeyId(String signingKeyId) {
+        Assert.isTrue(keys.containsKey(signingKeyId), "signingKeyId must be registered");
+        this.signingKeyId = signingKeyId;
+    }
+
+    public String getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    public void setCookieName(String cookieName) {
+        Assert.hasLength(cookieName, "cookieName cannot be null or empty");
+        this.cookieName = cookieName;
+    }
+
+    public void setHeaderName(String headerName) {
+        Assert.hasLength(headerName, "headerName cannot be null or empty");
+        this.headerName = headerName;
+    }
+
+    /**
+     * Sets the path of the cookie. Defaults to the context path of the request.
+     *
+     * @param cookiePath cookie path
+     */
+    public void setCookiePath(String cookiePath) {
+        this.cookiePath = cookiePath;
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        Assert.notNull(timeToLive, "timeToLive must not be null");
+        Assert.isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive must be positive");
+        this.timeToLive = timeToLive;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    private String createToken(Challenge challenge) {
+        String keyId = signingKeyId;
+        long expiresAt = clock.instant().plus(timeToLive).getEpochSecond();
+        String payload = keyId + "." + Base64UrlUtil.encodeToString(challenge.getValue()) + "." + expiresAt;
+        return payload + "." + Base64UrlUtil.encodeToString(sign(keys.get(keyId), payload));
+    }
+
+    private Challenge verifyToken(String token) {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(parts[0]);
+        if (key == null) {
+            return null;
+        }
+        try {
+            String payload = parts[0] + "." + parts[1] + "." + parts[2];
+            if (!MessageDigest.isEqual(sign(key, payload), Base64UrlUtil.decode(parts[3]))) {
+                return null;
+            }
+            if (clock.instant().getEpochSecond() >= Long.parseLong(parts[2])) {
+                return null;
+            }
+            return new DefaultChallenge(Base64UrlUtil.decode(parts[1]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(SecretKeySpec key, String payload) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HttpServletResponse getResponse(HttpServletRequest request) {
+        return (HttpServletResponse) request.getAttribute(HttpServletResponse.class.getName());
+    }
+
+    private String getCookiePath(HttpServletRequest request) {
+        if (cookiePath != null) {
+            return cookiePath;
+        }
+        String contextPath = request.getContextPath();
+        return StringUtils.hasLength(contextPath) ? contextPath : "/";
+    }
+
+}
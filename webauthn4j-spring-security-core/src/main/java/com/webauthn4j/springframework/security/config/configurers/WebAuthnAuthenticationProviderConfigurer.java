@@ -17,8 +17,10 @@
 package com.webauthn4j.springframework.security.config.configurers;
 
 import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.springframework.security.WebAuthnAuthenticationPreVerifier;
 import com.webauthn4j.springframework.security.WebAuthnAuthenticationProvider;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.authentication.ProviderManagerBuilder;
@@ -39,6 +41,8 @@ public class WebAuthnAuthenticationProviderConfigurer<
     // ================================================================================================
     private A webAuthnCredentialRecordService;
     private final V webAuthnManager;
+    private WebAuthnAuthenticationPreVerifier preVerifier;
+    private WebAuthnMetrics metrics;
 
     /**
      * Constructor
@@ -61,8 +65,34 @@ public class WebAuthnAuthenticationProviderConfigurer<
     @Override
     public void configure(B builder) {
         WebAuthnAuthenticationProvider authenticationProvider = new WebAuthnAuthenticationProvider(webAuthnCredentialRecordService, webAuthnManager);
+        authenticationProvider.setPreVerifier(preVerifier);
+        if (metrics != null) {
+            authenticationProvider.setMetrics(metrics);
+        }
         authenticationProvider = postProcess(authenticationProvider);
         builder.authenticationProvider(authenticationProvider);
     }
 
+    /**
+     * Sets the {@link WebAuthnAuthenticationPreVerifier} run before the credential record is retrieved
+     *
+     * @param preVerifier {@link WebAuthnAuthenticationPreVerifier}
+     * @return the {@link WebAuthnAuthenticationProviderConfigurer} for additional customization
+     */
+    public WebAuthnAuthenticationProviderConfigurer<B, A, V> preVerifier(WebAuthnAuthenticationPreVerifier preVerifier) {
+        this.preVerifier = preVerifier;
+        return this;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the credential record retrieval, the verification and the counter update
+     *
+     * @param metrics {@link WebAuthnMetrics}
+     * @return the {@link WebAuthnAuthenticationProviderConfigurer} for additional customization
+     */
+    public WebAuthnAuthenticationProviderConfigurer<B, A, V> metrics(WebAuthnMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
 }
@@ -36,6 +36,8 @@ import org.springframework.security.authentication.AuthenticationTrustResolver;
 import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
 import org.springframework.security.config.annotation.web.HttpSecurityBuilder;
 
+import java.util.Collection;
+
 /**
  * Internal utility for WebAuthn Configurers
  */
@@ -74,6 +76,14 @@ class WebAuthnConfigurerUtil {
         return applicationContext.getBean(WebAuthnCredentialRecordService.class);
     }
 
+    /**
+     * Get all beans of the given type from ApplicationContext
+     */
+    static <H extends HttpSecurityBuilder<H>, T> Collection<T> getBeansOfType(H http, Class<T> type) {
+        ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
+        return applicationContext.getBeansOfType(type).values();
+    }
+
     /**
      * Get {@link RpIdProvider} from SharedObject or ApplicationContext. if nothing hit, return null
      */
@@ -22,17 +22,26 @@ import com.webauthn4j.data.extension.client.AuthenticationExtensionClientInput;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
 import com.webauthn4j.data.extension.client.RegistrationExtensionClientInput;
 import com.webauthn4j.springframework.security.UserVerificationStrategy;
+import com.webauthn4j.springframework.security.WebAuthnAuthenticationProvider;
 import com.webauthn4j.springframework.security.WebAuthnProcessingFilter;
+import com.webauthn4j.springframework.security.WebAuthnRegistrationRequestValidator;
 import com.webauthn4j.springframework.security.challenge.ChallengeRepository;
 import com.webauthn4j.springframework.security.endpoint.AssertionOptionsEndpointFilter;
 import com.webauthn4j.springframework.security.endpoint.AttestationOptionsEndpointFilter;
 import com.webauthn4j.springframework.security.extension.AuthenticationExtensionProvider;
 import com.webauthn4j.springframework.security.extension.AuthenticationExtensionsClientInputsProvider;
 import com.webauthn4j.springframework.security.extension.RegistrationExtensionProvider;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.options.*;
 import com.webauthn4j.springframework.security.server.ServerPropertyProvider;
 import com.webauthn4j.springframework.security.server.ServerPropertyProviderImpl;
+import com.webauthn4j.springframework.security.util.internal.ExactPathRequestMatcher;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.annotation.web.HttpSecurityBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractAuthenticationFilterConfigurer;
@@ -44,9 +53,12 @@ import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Adds WebAuthn authentication. All attributes have reasonable defaults making all
@@ -91,6 +103,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
     private ServerPropertyProvider serverPropertyProvider = null;
     private AuthenticationTrustResolver trustResolver = null;
     private UserVerificationStrategy userVerificationStrategy = null;
+    private WebAuthnMetrics metrics = null;
 
     private final AttestationOptionsEndpointConfig attestationOptionsEndpointConfig = new AttestationOptionsEndpointConfig();
     private final AssertionOptionsEndpointConfig assertionOptionsEndpointConfig = new AssertionOptionsEndpointConfig();
@@ -162,6 +175,10 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         // Configure AuthenticationFilter
         this.getAuthenticationFilter().setServerPropertyProvider(serverPropertyProvider);
         this.getAuthenticationFilter().setUserVerificationStrategy(userVerificationStrategy);
+        if (metrics != null) {
+            this.getAuthenticationFilter().setMetrics(metrics);
+            configureMetrics(http);
+        }
         configureParameters();
 
         // Configure OptionsEndPointFilters
@@ -170,6 +187,33 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
 
     }
 
+    /**
+     * Wires the {@link WebAuthnMetrics} into the {@link WebAuthnAuthenticationProvider}s of the {@link AuthenticationManager}
+     * and of the application context, and into the {@link WebAuthnRegistrationRequestValidator}s of the application context.
+     * Components which have their own {@link WebAuthnMetrics} are left unchanged.
+     */
+    private void configureMetrics(H http) {
+        List<WebAuthnAuthenticationProvider> authenticationProviders = new ArrayList<>(WebAuthnConfigurerUtil.getBeansOfType(http, WebAuthnAuthenticationProvider.class));
+        AuthenticationManager authenticationManager = http.getSharedObject(AuthenticationManager.class);
+        if (authenticationManager instanceof ProviderManager) {
+            for (AuthenticationProvider authenticationProvider : ((ProviderManager) authenticationManager).getProviders()) {
+                if (authenticationProvider instanceof WebAuthnAuthenticationProvider) {
+                    authenticationProviders.add((WebAuthnAuthenticationProvider) authenticationProvider);
+                }
+            }
+        }
+        for (WebAuthnAuthenticationProvider authenticationProvider : authenticationProviders) {
+            if (authenticationProvider.getMetrics() instanceof NoOpWebAuthnMetrics) {
+                authenticationProvider.setMetrics(metrics);
+            }
+        }
+        for (WebAuthnRegistrationRequestValidator registrationRequestValidator : WebAuthnConfigurerUtil.getBeansOfType(http, WebAuthnRegistrationRequestValidator.class)) {
+            if (registrationRequestValidator.getMetrics() instanceof NoOpWebAuthnMetrics) {
+                registrationRequestValidator.setMetrics(metrics);
+            }
+        }
+    }
+
     private void configureParameters() {
         if (usernameParameter != null) {
             this.getAuthenticationFilter().setUsernameParameter(usernameParameter);
@@ -242,6 +286,20 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         return this;
     }
 
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the authentication, the options endpoints and the registration validation.
+     * It is also set to the {@link WebAuthnAuthenticationProvider}s and the {@link WebAuthnRegistrationRequestValidator}s
+     * which do not have their own. Nothing is recorded unless it is set.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     * @return the {@link WebAuthnLoginConfigurer} for additional customization
+     */
+    public WebAuthnLoginConfigurer<H> metrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+        return this;
+    }
+
     /**
      * Sets the {@link ServerPropertyProvider} to be used.
      * If both rpId and rpIdProvider are set, value from rpIdProvider is used.
@@ -439,6 +497,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
     public class AttestationOptionsEndpointConfig {
 
         private String processingUrl = AttestationOptionsEndpointFilter.FILTER_URL;
+        private RequestMatcher requestMatcher;
 
         private AttestationOptionsProvider attestationOptionsProvider = null;
 
@@ -456,6 +515,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         private void configure(H http) {
             AttestationOptionsEndpointFilter optionsEndpointFilter = WebAuthnConfigurerUtil.getAttestationOptionsEndpointFilterOrCreateNew(http);
             optionsEndpointFilter.setFilterProcessesUrl(processingUrl);
+            optionsEndpointFilter.setRequestMatcher(requestMatcher != null ? requestMatcher : new ExactPathRequestMatcher(processingUrl, HttpMethod.GET));
 
             if (attestationOptionsProvider == null) {
                 attestationOptionsProvider = WebAuthnConfigurerUtil.getAttestationOptionsProviderOrCreateNew(http);
@@ -463,6 +523,9 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             http.setSharedObject(AttestationOptionsProvider.class, attestationOptionsProvider);
 
             optionsEndpointFilter.setTrustResolver(trustResolver);
+            if (metrics != null) {
+                optionsEndpointFilter.setMetrics(metrics);
+            }
 
             if(attestationOptionsProvider instanceof AttestationOptionsProviderImpl){
                 AttestationOptionsProviderImpl attestationOptionsProviderImpl = (AttestationOptionsProviderImpl)attestationOptionsProvider;
@@ -512,6 +575,19 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             return this;
         }
 
+        /**
+         * Sets the {@link RequestMatcher} for the options endpoint, in place of the one matching GET requests
+         * to the processing URL exactly
+         *
+         * @param requestMatcher the {@link RequestMatcher} for the options endpoint
+         * @return the {@link AttestationOptionsEndpointConfig} for additional customization
+         */
+        public AttestationOptionsEndpointConfig requestMatcher(RequestMatcher requestMatcher) {
+            Assert.notNull(requestMatcher, "requestMatcher must not be null");
+            this.requestMatcher = requestMatcher;
+            return this;
+        }
+
         /**
          * Sets the relying party name
          *
@@ -747,20 +823,48 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
          */
         public class RegistrationExtensionsClientInputsConfig {
 
-            private final AuthenticationExtensionsClientInputs.BuilderForRegistration builder = new AuthenticationExtensionsClientInputs.BuilderForRegistration();
+            private Boolean uvm;
+            private Boolean credProps;
+            private final Map<String, Serializable> entries = new LinkedHashMap<>();
             @SuppressWarnings("java:S1450")
             private List<RegistrationExtensionProvider> providers = Collections.emptyList();
 
             private RegistrationExtensionsClientInputsConfig() {
             }
 
+            /**
+             * Freezes the static inputs. Without providers, a single instance is built and returned for every request.
+             * With providers, each request gets its own builder, as providers mutate it, holding the frozen static
+             * inputs and the provider output.
+             */
             private AuthenticationExtensionsClientInputsProvider<RegistrationExtensionClientInput> getExtensionsProvider() {
+                Boolean staticUvm = uvm;
+                Boolean staticCredProps = credProps;
+                Map<String, Serializable> staticEntries = new LinkedHashMap<>(entries);
+                List<RegistrationExtensionProvider> extensionProviders = providers;
+                if (extensionProviders.isEmpty()) {
+                    AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> extensions = createBuilder(staticUvm, staticCredProps, staticEntries).build();
+                    return httpServletRequest -> extensions;
+                }
                 return httpServletRequest -> {
-                    providers.forEach(provider -> provider.provide(builder, httpServletRequest));
+                    AuthenticationExtensionsClientInputs.BuilderForRegistration builder = createBuilder(staticUvm, staticCredProps, staticEntries);
+                    extensionProviders.forEach(provider -> provider.provide(builder, httpServletRequest));
                     return builder.build();
                 };
             }
 
+            private AuthenticationExtensionsClientInputs.BuilderForRegistration createBuilder(Boolean uvm, Boolean credProps, Map<String, Serializable> entries) {
+                AuthenticationExtensionsClientInputs.BuilderForRegistration builder = new AuthenticationExtensionsClientInputs.BuilderForRegistration();
+                if (uvm != null) {
+                    builder.setUvm(uvm);
+                }
+                if (credProps != null) {
+                    builder.setCredProps(credProps);
+                }
+                entries.forEach(builder::set);
+                return builder;
+            }
+
             /**
              * Configure uvm extension
              *
@@ -769,7 +873,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
              */
             public RegistrationExtensionsClientInputsConfig uvm(Boolean uvm) {
                 Assert.notNull(uvm, "uvm must not be null");
-                builder.setUvm(uvm);
+                this.uvm = uvm;
                 return this;
             }
 
@@ -781,7 +885,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
              */
             public RegistrationExtensionsClientInputsConfig credProps(Boolean credProps){
                 Assert.notNull(credProps, "credProps must not be null");
-                builder.setCredProps(credProps);
+                this.credProps = credProps;
                 return this;
             }
 
@@ -795,7 +899,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             public RegistrationExtensionsClientInputsConfig entry(String key, Serializable value) {
                 Assert.notNull(key, "key must not be null");
                 Assert.notNull(value, "value must not be null");
-                builder.set(key, value);
+                entries.put(key, value);
                 return this;
             }
 
@@ -823,6 +927,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
     public class AssertionOptionsEndpointConfig {
 
         private String processingUrl = AssertionOptionsEndpointFilter.FILTER_URL;
+        private RequestMatcher requestMatcher;
 
         private AssertionOptionsProvider assertionOptionsProvider;
 
@@ -839,12 +944,16 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         private void configure(H http) {
             AssertionOptionsEndpointFilter optionsEndpointFilter = WebAuthnConfigurerUtil.getAssertionOptionsEndpointFilterOrCreateNew(http);
             optionsEndpointFilter.setFilterProcessesUrl(processingUrl);
+            optionsEndpointFilter.setRequestMatcher(requestMatcher != null ? requestMatcher : new ExactPathRequestMatcher(processingUrl, HttpMethod.GET));
 
             if (assertionOptionsProvider == null) {
                 assertionOptionsProvider = WebAuthnConfigurerUtil.getAssertionOptionsProviderOrCreateNew(http);
             }
             http.setSharedObject(AssertionOptionsProvider.class, assertionOptionsProvider);
             optionsEndpointFilter.setTrustResolver(trustResolver);
+            if (metrics != null) {
+                optionsEndpointFilter.setMetrics(metrics);
+            }
 
             if(assertionOptionsProvider instanceof AssertionOptionsProviderImpl){
                 AssertionOptionsProviderImpl optionsProviderImpl = (AssertionOptionsProviderImpl)assertionOptionsProvider;
@@ -896,6 +1005,19 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             return this;
         }
 
+        /**
+         * Sets the {@link RequestMatcher} for the options endpoint, in place of the one matching GET requests
+         * to the processing URL exactly
+         *
+         * @param requestMatcher the {@link RequestMatcher} for the options endpoint
+         * @return the {@link AssertionOptionsEndpointConfig} for additional customization
+         */
+        public AssertionOptionsEndpointConfig requestMatcher(RequestMatcher requestMatcher) {
+            Assert.notNull(requestMatcher, "requestMatcher must not be null");
+            this.requestMatcher = requestMatcher;
+            return this;
+        }
+
 
         /**
          * Sets relying party id
@@ -966,20 +1088,53 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
          */
         public class AuthenticationExtensionsClientInputsConfig {
 
-            private final AuthenticationExtensionsClientInputs.BuilderForAuthentication builder = new AuthenticationExtensionsClientInputs.BuilderForAuthentication();
+            private String appid;
+            private String appidExclude;
+            private Boolean uvm;
+            private final Map<String, Serializable> entries = new LinkedHashMap<>();
             @SuppressWarnings("java:S1450")
             private List<AuthenticationExtensionProvider> providers = Collections.emptyList();
 
             private AuthenticationExtensionsClientInputsConfig() {
             }
 
+            /**
+             * Freezes the static inputs. Without providers, a single instance is built and returned for every request.
+             * With providers, each request gets its own builder, as providers mutate it, holding the frozen static
+             * inputs and the provider output.
+             */
             private AuthenticationExtensionsClientInputsProvider<AuthenticationExtensionClientInput> getExtensionsProvider() {
+                String staticAppid = appid;
+                String staticAppidExclude = appidExclude;
+                Boolean staticUvm = uvm;
+                Map<String, Serializable> staticEntries = new LinkedHashMap<>(entries);
+                List<AuthenticationExtensionProvider> extensionProviders = providers;
+                if (extensionProviders.isEmpty()) {
+                    AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> extensions = createBuilder(staticAppid, staticAppidExclude, staticUvm, staticEntries).build();
+                    return httpServletRequest -> extensions;
+                }
                 return httpServletRequest -> {
-                    providers.forEach(provider -> provider.provide(builder, httpServletRequest));
+                    AuthenticationExtensionsClientInputs.BuilderForAuthentication builder = createBuilder(staticAppid, staticAppidExclude, staticUvm, staticEntries);
+                    extensionProviders.forEach(provider -> provider.provide(builder, httpServletRequest));
                     return builder.build();
                 };
             }
 
+            private AuthenticationExtensionsClientInputs.BuilderForAuthentication createBuilder(String appid, String appidExclude, Boolean uvm, Map<String, Serializable> entries) {
+                AuthenticationExtensionsClientInputs.BuilderForAuthentication builder = new AuthenticationExtensionsClientInputs.BuilderForAuthentication();
+                if (appid != null) {
+                    builder.setAppid(appid);
+                }
+                if (appidExclude != null) {
+                    builder.setAppidExclude(appidExclude);
+                }
+                if (uvm != null) {
+                    builder.setUvm(uvm);
+                }
+                entries.forEach(builder::set);
+                return builder;
+            }
+
             /**
              * Configure appid extension
              *
@@ -988,7 +1143,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
              */
             public AuthenticationExtensionsClientInputsConfig appid(String appid) {
                 Assert.notNull(appid, "appid must not be null");
-                builder.setAppid(appid);
+                this.appid = appid;
                 return this;
             }
 
@@ -1000,7 +1155,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
              */
             public AuthenticationExtensionsClientInputsConfig appidExclude(String appidExclude) {
                 Assert.notNull(appidExclude, "appidExclude must not be null");
-                builder.setAppidExclude(appidExclude);
+                this.appidExclude = appidExclude;
                 return this;
             }
 
@@ -1012,7 +1167,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
              */
             public AuthenticationExtensionsClientInputsConfig uvm(Boolean uvm) {
                 Assert.notNull(uvm, "uvm must not be null");
-                builder.setUvm(uvm);
+                this.uvm = uvm;
                 return this;
             }
 
@@ -1026,7 +1181,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             public AuthenticationExtensionsClientInputsConfig entry(String key, Serializable value) {
                 Assert.notNull(key, "key must not be null");
                 Assert.notNull(value, "value must not be null");
-                builder.set(key, value);
+                entries.put(key, value);
                 return this;
             }
 
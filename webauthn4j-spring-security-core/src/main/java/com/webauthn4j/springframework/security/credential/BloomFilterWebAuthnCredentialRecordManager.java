@@ -0,0 +1,314 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.util.internal.BloomFilter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@link WebAuthnCredentialRecordManager} decorator which rejects unknown credentialIds in memory, before the
+ * delegate is accessed, by a Bloom filter of the registered credentialIds.
+ * <p>
+ * The filter is built from the delegate by {@link #rebuild()}, which enumerates its credentialIds.
+ * {@link #afterPropertiesSet()} builds it and schedules a rebuild every rebuild interval. Credential records created
+ * through this manager are added to the filter. Deleted credentialIds cannot be removed from a Bloom filter, so they
+ * pass the filter until the next rebuild.
+ * <p>
+ * The rejection is not authoritative: credential records created through another path, e.g. on another node of a
+ * cluster sharing the store, are unknown to the filter until its next rebuild, and are rejected until then. It is
+ * therefore disabled by default, in which case this decorator only delegates. Enable it with
+ * {@link #setFastRejectEnabled(boolean)} only if every credential record is created through this manager, or if
+ * the maximum filter age is an acceptable delay before a credential registered elsewhere can be used. A lookup is
+ * rejected only while the filter is younger than the maximum filter age; an older filter, e.g. because rebuilds fail,
+ * is bypassed. Each node holds and rebuilds its own filter.
+ * <p>
+ * The filter is sized so that the false positive probability, i.e. the share of unknown credentialIds still reaching
+ * the delegate, is the configured one when the expected number of credential records is stored.
+ */
+public class BloomFilterWebAuthnCredentialRecordManager implements EnumerableWebAuthnCredentialRecordManager, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long DEFAULT_EXPECTED_INSERTIONS = 1000000;
+    private static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final Duration DEFAULT_REBUILD_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_MAXIMUM_FILTER_AGE = Duration.ofMinutes(2);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final EnumerableWebAuthnCredentialRecordManager delegate;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile Generation generation;
+    private volatile BloomFilter building;
+    private boolean fastRejectEnabled = false;
+    private Duration rebuildInterval = DEFAULT_REBUILD_INTERVAL;
+    private Duration maximumFilterAge = DEFAULT_MAXIMUM_FILTER_AGE;
+    private Clock clock = Clock.systemUTC();
+    private ScheduledExecutorService executorService;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param delegate                 delegate
+     * @param expectedInsertions       expected number of credential records
+     * @param falsePositiveProbability false positive probability at the expected number of credential records
+     */
+    public BloomFilterWebAuthnCredentialRecordManager(EnumerableWebAuthnCredentialRecordManager delegate, long expectedInsertions, double falsePositiveProbability) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(expectedInsertions > 0, "expectedInsertions must be positive");
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability must be between 0 and 1");
+        this.delegate = delegate;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public BloomFilterWebAuthnCredentialRecordManager(EnumerableWebAuthnCredentialRecordManager delegate) {
+        this(delegate, DEFAULT_EXPECTED_INSERTIONS, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Builds the filter, and schedules its rebuilds unless the rebuild interval is null, if the fast reject is enabled
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (!fastRejectEnabled) {
+            return;
+        }
+        rebuild();
+        if (rebuildInterval != null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-credential-bloom-filter-");
+            threadFactory.setDaemon(true);
+            executorService = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long interval = rebuildInterval.toMillis();
+            executorService.scheduleWithFixedDelay(this::rebuildQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the scheduled rebuilds
+     */
+    @Override
+    public void destroy() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the credentialIds of the delegate. Credential records created during the rebuild
+     * are added to the new filter as well.
+     */
+    public synchronized void rebuild() {
+        Instant startedAt = clock.instant();
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveProbability);
+        building = next;
+        try {
+            AtomicLong count = new AtomicLong();
+            delegate.forEachCredentialId(credentialId -> {
+                next.put(credentialId);
+                count.incrementAndGet();
+            });
+            if (count.get() > expectedInsertions) {
+                logger.warn(String.format("%d credential records exceed the expected %d; the false positive probability is higher than configured",
+                        count.get(), expectedInsertions));
+            }
+            // the age is counted from the start, as records created elsewhere during the enumeration may be missed
+            generation = new Generation(next, startedAt);
+        } finally {
+            building = null;
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to rebuild the Bloom filter of credentialIds", e);
+        }
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        if (isDefinitelyAbsent(credentialId)) {
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        return delegate.loadCredentialRecordByCredentialId(credentialId);
+    }
+
+    @Override
+    public boolean credentialRecordExists(byte[] credentialId) {
+        return !isDefinitelyAbsent(credentialId) && delegate.credentialRecordExists(credentialId);
+    }
+
+    @Override
+    public void createCredentialRecord(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        delegate.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        // the filter being built is read first, as the rebuild publishes its filter before clearing it
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(credentialId);
+        }
+        Generation current = generation;
+        if (current != null) {
+            current.filter.put(credentialId);
+        }
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void deleteCredentialRecord(byte[] credentialId) throws CredentialIdNotFoundException {
+        delegate.deleteCredentialRecord(credentialId);
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        delegate.updateCounter(credentialId, counter);
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        return delegate.updateCounterIfGreater(credentialId, counter);
+    }
+
+    @Override
+    public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal) {
+        return delegate.loadCredentialRecordsByUserPrincipal(principal);
+    }
+
+    @Override
+    public List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        return delegate.loadCredentialDescriptorsByUserPrincipal(principal);
+    }
+
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        delegate.forEachCredentialId(action);
+    }
+
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    /**
+     * Sets the interval between two scheduled rebuilds. If null, the filter is rebuilt only by {@link #rebuild()}.
+     *
+     * @param rebuildInterval rebuild interval
+     */
+    public void setRebuildInterval(Duration rebuildInterval) {
+        Assert.isTrue(rebuildInterval == null || !rebuildInterval.isNegative() && !rebuildInterval.isZero(), "rebuildInterval must be positive");
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    public Duration getMaximumFilterAge() {
+        return maximumFilterAge;
+    }
+
+    /**
+     * Sets the age after which the filter is no longer trusted to reject a credentialId, and lookups go to the delegate
+     *
+     * @param maximumFilterAge maximum filter age
+     */
+    public void setMaximumFilterAge(Duration maximumFilterAge) {
+        Assert.notNull(maximumFilterAge, "maximumFilterAge must not be null");
+        this.maximumFilterAge = maximumFilterAge;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    public boolean isFastRejectEnabled() {
+        return fastRejectEnabled;
+    }
+
+    /**
+     * Sets whether credentialIds absent from the filter are rejected without accessing the delegate. Disabled by
+     * default, as the filter does not know credential records created through another path until its next rebuild.
+     *
+     * @param fastRejectEnabled true to reject credentialIds absent from the filter
+     */
+    public void setFastRejectEnabled(boolean fastRejectEnabled) {
+        this.fastRejectEnabled = fastRejectEnabled;
+    }
+
+    /**
+     * Returns the number of lookups rejected by the filter without accessing the delegate
+     *
+     * @return number of rejected lookups
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private boolean isDefinitelyAbsent(byte[] credentialId) {
+        Generation current = generation;
+        if (!fastRejectEnabled || current == null || credentialId == null || current.filter.mightContain(credentialId)) {
+            return false;
+        }
+        if (Duration.between(current.builtAt, clock.instant()).compareTo(maximumFilterAge) > 0) {
+            // a stale filter may miss credential records created elsewhere
+            return false;
+        }
+        rejectedCount.incrementAndGet();
+        return true;
+    }
+
+    private static class Generation {
+
+        private final BloomFilter filter;
+        private final Instant builtAt;
+
+        Generation(BloomFilter filter, Instant builtAt) {
+            this.filter = filter;
+            this.builtAt = builtAt;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+
+import java.time.Duration;
+
+/**
+ * A {@link WebAuthnCredentialRecordManager} decorator which caches credential records as
+ * {@link CachingWebAuthnCredentialRecordService} does, and evicts the entries affected by the creation or deletion of
+ * a credential record through this manager: the entry of its credentialId and the list of its user principal.
+ * <p>
+ * Credential records created or deleted through another path, e.g. on another node, are only seen once their entries
+ * expire, or are evicted.
+ */
+public class CachingWebAuthnCredentialRecordManager extends CachingWebAuthnCredentialRecordService implements WebAuthnCredentialRecordManager {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnCredentialRecordManager delegate;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public CachingWebAuthnCredentialRecordManager(WebAuthnCredentialRecordManager delegate, int maximumSize, Duration timeToLive) {
+        super(delegate, maximumSize, timeToLive);
+        this.delegate = delegate;
+    }
+
+    public CachingWebAuthnCredentialRecordManager(WebAuthnCredentialRecordManager delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void createCredentialRecord(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        try {
+            delegate.createCredentialRecord(webAuthnCredentialRecord);
+        } finally {
+            evict(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId(), webAuthnCredentialRecord.getUserPrincipal());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void deleteCredentialRecord(byte[] credentialId) throws CredentialIdNotFoundException {
+        // the user principal is needed to evict its list
+        WebAuthnCredentialRecord webAuthnCredentialRecord = loadCredentialRecordByCredentialId(credentialId);
+        try {
+            delegate.deleteCredentialRecord(credentialId);
+        } finally {
+            evict(credentialId, webAuthnCredentialRecord == null ? null : webAuthnCredentialRecord.getUserPrincipal());
+        }
+    }
+
+    @Override
+    public boolean credentialRecordExists(byte[] credentialId) {
+        return delegate.credentialRecordExists(credentialId);
+    }
+
+    private void evict(byte[] credentialId, Object principal) {
+        evictCredentialRecord(credentialId);
+        if (principal != null) {
+            evictCredentialRecordsByUserPrincipal(principal);
+        }
+    }
+}
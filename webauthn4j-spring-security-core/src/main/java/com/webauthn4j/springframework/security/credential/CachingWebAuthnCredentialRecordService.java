@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.util.internal.BoundedCache;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link WebAuthnCredentialRecordService} decorator which caches credential records loaded by credentialId
+ * and by user principal in size and time-to-live bounded caches.
+ * <p>
+ * {@link #updateCounter(byte[], long)} writes the new signature counter through to the delegate and to the
+ * cached credential record, so that the counter check of the next authentication is performed against
+ * the latest value. A load which started before a counter update or an eviction is not cached.
+ * <p>
+ * This service does not observe the creation or deletion of credential records, so a deleted credential record keeps
+ * being returned, and a created one is missing from the list of its user principal, until the time-to-live expires.
+ * Use {@link CachingWebAuthnCredentialRecordManager} to create and delete credential records through the cache, and
+ * evict the entries affected by other paths, e.g. other nodes, with {@link #evictCredentialRecord(byte[])} and
+ * {@link #evictCredentialRecordsByUserPrincipal(Object)}.
+ * <p>
+ * Cached {@link WebAuthnCredentialRecordImpl} instances are never handed out: each load returns a copy,
+ * as the verification of an authentication mutates the record it is given. Records of other types cannot be
+ * copied and are shared between threads, so they must tolerate concurrent modification.
+ */
+public class CachingWebAuthnCredentialRecordService implements WebAuthnCredentialRecordService {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnCredentialRecordService delegate;
+    private final BoundedCache<CredentialIdKey, WebAuthnCredentialRecord> credentialIdCache;
+    private final BoundedCache<Object, List<WebAuthnCredentialRecord>> userPrincipalCache;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public CachingWebAuthnCredentialRecordService(WebAuthnCredentialRecordService delegate, int maximumSize, Duration timeToLive) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+        this.credentialIdCache = new BoundedCache<>(maximumSize, timeToLive);
+        this.userPrincipalCache = new BoundedCache<>(maximumSize, timeToLive);
+    }
+
+    public CachingWebAuthnCredentialRecordService(WebAuthnCredentialRecordService delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        CredentialIdKey key = CredentialIdKey.of(credentialId);
+        try {
+            delegate.updateCounter(credentialId, counter);
+        } catch (RuntimeException e) {
+            credentialIdCache.invalidate(key);
+            throw e;
+        }
+        writeCounterThrough(key, counter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        CredentialIdKey key = CredentialIdKey.of(credentialId);
+        boolean updated;
+        try {
+            updated = delegate.updateCounterIfGreater(credentialId, counter);
+        } catch (RuntimeException e) {
+            credentialIdCache.invalidate(key);
+            throw e;
+        }
+        if (updated) {
+            writeCounterThrough(key, counter);
+        } else {
+            // the cached record is stale, as another node has already advanced the counter
+            credentialIdCache.invalidate(key);
+        }
+        return updated;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        return copyOf(credentialIdCache.get(CredentialIdKey.of(credentialId), key -> delegate.loadCredentialRecordByCredentialId(credentialId)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal) {
+        if (principal == null) {
+            return delegate.loadCredentialRecordsByUserPrincipal(null);
+        }
+        List<WebAuthnCredentialRecord> cached = userPrincipalCache.get(principal, delegate::loadCredentialRecordsByUserPrincipal);
+        if (cached == null) {
+            return null;
+        }
+        List<WebAuthnCredentialRecord> webAuthnCredentialRecords = new ArrayList<>(cached.size());
+        for (WebAuthnCredentialRecord webAuthnCredentialRecord : cached) {
+            webAuthnCredentialRecords.add(copyOf(webAuthnCredentialRecord));
+        }
+        return Collections.unmodifiableList(webAuthnCredentialRecords);
+    }
+
+    /**
+     * Returns descriptors derived from the cached credential record list if present.
+     * Otherwise, the projection is delegated without populating the cache.
+     *
+     * @param principal user principal
+     * @return {@link PublicKeyCredentialDescriptor} list
+     */
+    @Override
+    public List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        if (principal != null && userPrincipalCache.getIfPresent(principal) != null) {
+            return WebAuthnCredentialRecordService.super.loadCredentialDescriptorsByUserPrincipal(principal);
+        }
+        return delegate.loadCredentialDescriptorsByUserPrincipal(principal);
+    }
+
+    /**
+     * Evicts the cached credential record with the given credentialId
+     *
+     * @param credentialId credentialId
+     */
+    public void evictCredentialRecord(byte[] credentialId) {
+        credentialIdCache.invalidate(CredentialIdKey.of(credentialId));
+    }
+
+    /**
+     * Evicts the cached credential record list of the given user principal
+     *
+     * @param principal user principal
+     */
+    public void evictCredentialRecordsByUserPrincipal(Object principal) {
+        userPrincipalCache.invalidate(principal);
+    }
+
+    /**
+     * Evicts all cached entries
+     */
+    public void evictAll() {
+        credentialIdCache.invalidateAll();
+        userPrincipalCache.invalidateAll();
+    }
+
+    /**
+     * Returns statistics of the by-credentialId cache
+     *
+     * @return statistics
+     */
+    public Statistics getCredentialIdCacheStatistics() {
+        return new Statistics(credentialIdCache);
+    }
+
+    /**
+     * Returns statistics of the by-user-principal cache
+     *
+     * @return statistics
+     */
+    public Statistics getUserPrincipalCacheStatistics() {
+        return new Statistics(userPrincipalCache);
+    }
+
+    private WebAuthnCredentialRecord copyOf(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        if (webAuthnCredentialRecord == null) {
+            return null;
+        }
+        // the counter of the cached record is written through under its lock
+        synchronized (webAuthnCredentialRecord) {
+            return WebAuthnCredentialRecords.copyOf(webAuthnCredentialRecord);
+        }
+    }
+
+    private void writeCounterThrough(CredentialIdKey key, long counter) {
+        // a load which read the previous counter must not be cached
+        credentialIdCache.invalidateLoads(key);
+        WebAuthnCredentialRecord cached = credentialIdCache.getIfPresent(key);
+        if (cached != null) {
+            synchronized (cached) {
+                if (cached.getCounter() < counter) {
+                    cached.setCounter(counter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Point-in-time statistics of a cache
+     */
+    public static class Statistics {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int size;
+
+        Statistics(BoundedCache<?, ?> cache) {
+            this.hitCount = cache.getHitCount();
+            this.missCount = cache.getMissCount();
+            this.evictionCount = cache.getEvictionCount();
+            this.size = cache.size();
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.util.ArrayUtil;
+
+import java.util.Arrays;
+
+/**
+ * Immutable map key wrapping a credentialId byte array.
+ * The hash code is computed once so that repeated lookups do not rehash the array.
+ */
+final class CredentialIdKey {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final byte[] value;
+    private final int hash;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    private CredentialIdKey(byte[] value) {
+        this.value = value;
+        this.hash = Arrays.hashCode(value);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Creates a key from a credentialId. The array is copied so that later mutation by the caller does not
+     * corrupt the map it is stored in.
+     *
+     * @param credentialId credentialId
+     * @return key
+     */
+    static CredentialIdKey of(byte[] credentialId) {
+        return new CredentialIdKey(ArrayUtil.clone(credentialId));
+    }
+
+    byte[] getValue() {
+        return ArrayUtil.clone(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CredentialIdKey that = (CredentialIdKey) o;
+        return hash == that.hash && Arrays.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import java.util.function.Consumer;
+
+/**
+ * A {@link WebAuthnCredentialRecordManager} which can enumerate the credentialIds of its credential records, e.g. to
+ * build an index of them such as {@link BloomFilterWebAuthnCredentialRecordManager}
+ */
+public interface EnumerableWebAuthnCredentialRecordManager extends WebAuthnCredentialRecordManager {
+
+    /**
+     * Performs the given action for the credentialId of every stored credential record. Implementations should stream
+     * the credentialIds rather than load the credential records.
+     *
+     * @param action action performed for each credentialId
+     */
+    void forEachCredentialId(Consumer<byte[]> action);
+
+}
@@ -18,63 +18,163 @@ package com.webauthn4j.springframework.security.credential;
 
 import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
 import com.webauthn4j.springframework.security.exception.PrincipalNotFoundException;
-import com.webauthn4j.util.Base64UrlUtil;
+import org.springframework.util.Assert;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-public class InMemoryWebAuthnCredentialRecordManager implements WebAuthnCredentialRecordManager {
+/**
+ * A thread-safe, in-memory {@link WebAuthnCredentialRecordManager}.
+ * <p>
+ * Credential records are indexed globally by credentialId and secondarily by user principal,
+ * so that lookups by either key are constant-time regardless of the number of stored records.
+ * Signature counters are held in atomic variables, so that conditional counter updates are lock-free.
+ * <p>
+ * Stored {@link WebAuthnCredentialRecordImpl} instances are never handed out: each load returns a copy carrying
+ * the current counter, so that a verification mutating its record cannot affect concurrent readers.
+ * Records of other types cannot be copied, and are shared between callers.
+ * <p>
+ * Credential records must have a user principal. A lookup by a null user principal matches no record.
+ */
+public class InMemoryWebAuthnCredentialRecordManager implements EnumerableWebAuthnCredentialRecordManager {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ConcurrentMap<CredentialIdKey, Entry> credentialIdIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, Map<CredentialIdKey, Entry>> principalIndex = new ConcurrentHashMap<>();
 
-    private Map<Object, Map<String, WebAuthnCredentialRecord>> map = new HashMap<>();
+    // ~ Methods
+    // ========================================================================================================
 
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     @Override
     public void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
-        WebAuthnCredentialRecord webAuthnCredentialRecord = this.loadCredentialRecordByCredentialId(credentialId);
-        webAuthnCredentialRecord.setCounter(counter);
+        Entry entry = getEntry(credentialId);
+        entry.counter.set(counter);
+        entry.publishCounter();
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        Entry entry = getEntry(credentialId);
+        long current;
+        do {
+            current = entry.counter.get();
+            if (current >= counter) {
+                return false;
+            }
+        } while (!entry.counter.compareAndSet(current, counter));
+        entry.publishCounter();
+        return true;
     }
 
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     @Override
     public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException{
-        return map.values().stream().
-                map(innerMap ->
-                        innerMap.get(Base64UrlUtil.encodeToString(credentialId))
-                ).filter(Objects::nonNull)
-                .findFirst().orElseThrow(()-> new CredentialIdNotFoundException("credentialId not found."));
+        return getEntry(credentialId).load();
     }
 
     @Override
     public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object userPrincipal) {
-        Map<String, WebAuthnCredentialRecord> innerMap = map.get(userPrincipal);
+        Map<CredentialIdKey, Entry> innerMap = userPrincipal == null ? null : principalIndex.get(userPrincipal);
         if(innerMap == null || innerMap.isEmpty()){
             throw new PrincipalNotFoundException("principal not found.");
         }
-        return Collections.unmodifiableList(new ArrayList<>(innerMap.values()));
+        List<WebAuthnCredentialRecord> webAuthnCredentialRecords = new ArrayList<>(innerMap.size());
+        for (Entry entry : innerMap.values()) {
+            webAuthnCredentialRecords.add(entry.load());
+        }
+        return Collections.unmodifiableList(webAuthnCredentialRecords);
     }
 
     @Override
     public void createCredentialRecord(WebAuthnCredentialRecord webAuthnCredentialRecord) {
         Object userPrincipal = webAuthnCredentialRecord.getUserPrincipal();
-        if(!map.containsKey(userPrincipal)){
-            map.put(userPrincipal, new HashMap<>());
-        }
-        map.get(userPrincipal).put(Base64UrlUtil.encodeToString(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId()), webAuthnCredentialRecord);
+        Assert.notNull(userPrincipal, "userPrincipal of webAuthnCredentialRecord must not be null");
+        CredentialIdKey key = CredentialIdKey.of(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId());
+        Entry entry = new Entry(WebAuthnCredentialRecords.copyOf(webAuthnCredentialRecord));
+        // Both indexes are updated while holding the credentialId index entry, so that a concurrent
+        // create or delete of the same credentialId cannot interleave with this update.
+        credentialIdIndex.compute(key, (k, previous) -> {
+            if(previous != null && !Objects.equals(previous.webAuthnCredentialRecord.getUserPrincipal(), userPrincipal)){
+                removeFromPrincipalIndex(previous.webAuthnCredentialRecord.getUserPrincipal(), k);
+            }
+            principalIndex.compute(userPrincipal, (principal, innerMap) -> {
+                Map<CredentialIdKey, Entry> map = innerMap == null ? new ConcurrentHashMap<>() : innerMap;
+                map.put(k, entry);
+                return map;
+            });
+            return entry;
+        });
     }
 
     @Override
     public void deleteCredentialRecord(byte[] credentialId) {
-        for (Map.Entry<Object, Map<String, WebAuthnCredentialRecord>> entry : map.entrySet()){
-            WebAuthnCredentialRecord webAuthnCredentialRecord = entry.getValue().get(Base64UrlUtil.encodeToString(credentialId));
-            if(webAuthnCredentialRecord != null){
-                entry.getValue().remove(Base64UrlUtil.encodeToString(credentialId));
-                return;
-            }
+        AtomicBoolean removed = new AtomicBoolean(false);
+        credentialIdIndex.computeIfPresent(CredentialIdKey.of(credentialId), (key, entry) -> {
+            removeFromPrincipalIndex(entry.webAuthnCredentialRecord.getUserPrincipal(), key);
+            removed.set(true);
+            return null;
+        });
+        if(!removed.get()){
+            throw new CredentialIdNotFoundException("credentialId not found.");
         }
-        throw new CredentialIdNotFoundException("credentialId not found.");
     }
 
     @Override
     public boolean credentialRecordExists(byte[] credentialId) {
-        return map.values().stream().anyMatch(innerMap -> innerMap.get(Base64UrlUtil.encodeToString(credentialId)) != null);
+        return credentialIdIndex.containsKey(CredentialIdKey.of(credentialId));
+    }
+
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        credentialIdIndex.keySet().forEach(key -> action.accept(key.getValue()));
+    }
+
+    private Entry getEntry(byte[] credentialId) {
+        Entry entry = credentialIdIndex.get(CredentialIdKey.of(credentialId));
+        if(entry == null){
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        return entry;
+    }
+
+    private void removeFromPrincipalIndex(Object userPrincipal, CredentialIdKey key) {
+        principalIndex.computeIfPresent(userPrincipal, (principal, innerMap) -> {
+            innerMap.remove(key);
+            return innerMap.isEmpty() ? null : innerMap;
+        });
+    }
+
+    private static class Entry {
+
+        private final WebAuthnCredentialRecord webAuthnCredentialRecord;
+        private final AtomicLong counter;
+
+        Entry(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+            this.webAuthnCredentialRecord = webAuthnCredentialRecord;
+            this.counter = new AtomicLong(webAuthnCredentialRecord.getCounter());
+        }
+
+        WebAuthnCredentialRecord load() {
+            return WebAuthnCredentialRecords.copyOf(webAuthnCredentialRecord, counter.get());
+        }
+
+        /**
+         * Reflects the authoritative counter on a shared record which cannot be copied.
+         * The counter is re-read under the lock, so that concurrent updates cannot publish out of order.
+         */
+        void publishCounter() {
+            if (!WebAuthnCredentialRecords.isCopyable(webAuthnCredentialRecord)) {
+                synchronized (this) {
+                    webAuthnCredentialRecord.setCounter(counter.get());
+                }
+            }
+        }
     }
 }
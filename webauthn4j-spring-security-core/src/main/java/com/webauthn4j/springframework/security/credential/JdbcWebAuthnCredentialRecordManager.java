@@ -0,0 +1,330 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.CborConverter;
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.extension.authenticator.AuthenticationExtensionsAuthenticatorOutputs;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientOutputs;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientOutput;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.exception.PrincipalNotFoundException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.Serializable;
+import java.security.Principal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A JDBC implementation of {@link WebAuthnCredentialRecordManager}.
+ * <p>
+ * Records are stored in a single table whose reference DDL is available on the classpath at
+ * {@value #DEFAULT_SCHEMA_LOCATION}. The credentialId is the primary key and the principal name is indexed,
+ * so that loading a credential record and updating its counter are each a single indexed round trip.
+ * {@link #updateCounterIfGreater(byte[], long)} is a single conditional {@code UPDATE}, which makes the counter check
+ * atomic across nodes sharing the database.
+ * The COSE key, the attestation statement and the authenticator extensions are stored as CBOR binaries.
+ * <p>
+ * Only the principal name is persisted. Loaded records carry the principal name as their user principal,
+ * unless a {@link UserDetailsService} is configured to resolve it to {@link UserDetails}.
+ */
+public class JdbcWebAuthnCredentialRecordManager implements EnumerableWebAuthnCredentialRecordManager {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String DEFAULT_SCHEMA_LOCATION = "com/webauthn4j/springframework/security/credential/webauthn-credential-record-schema.sql";
+
+    private static final String TABLE_NAME = "webauthn_credential_record";
+
+    private static final String COLUMN_NAMES = "credential_id, principal_name, name, counter, uv_initialized, backup_eligible, backup_state, "
+            + "aaguid, cose_key, attestation_statement, authenticator_extensions, client_data, client_extensions, transports";
+
+    public static final String DEF_LOAD_BY_CREDENTIAL_ID_SQL = "SELECT " + COLUMN_NAMES + " FROM " + TABLE_NAME + " WHERE credential_id = ?";
+    public static final String DEF_LOAD_BY_PRINCIPAL_NAME_SQL = "SELECT " + COLUMN_NAMES + " FROM " + TABLE_NAME + " WHERE principal_name = ?";
+    public static final String DEF_LOAD_DESCRIPTORS_BY_PRINCIPAL_NAME_SQL = "SELECT credential_id, transports FROM " + TABLE_NAME + " WHERE principal_name = ?";
+    public static final String DEF_INSERT_SQL = "INSERT INTO " + TABLE_NAME + " (" + COLUMN_NAMES + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String DEF_UPDATE_COUNTER_SQL = "UPDATE " + TABLE_NAME + " SET counter = ? WHERE credential_id = ?";
+    public static final String DEF_UPDATE_COUNTER_IF_GREATER_SQL = "UPDATE " + TABLE_NAME + " SET counter = ? WHERE credential_id = ? AND counter < ?";
+    public static final String DEF_DELETE_SQL = "DELETE FROM " + TABLE_NAME + " WHERE credential_id = ?";
+    public static final String DEF_EXISTS_SQL = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE credential_id = ?";
+    public static final String DEF_LOAD_ALL_CREDENTIAL_IDS_SQL = "SELECT credential_id FROM " + TABLE_NAME;
+
+    private static final TypeReference<AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput>> AUTHENTICATOR_EXTENSIONS_TYPE = new TypeReference<>() {
+    };
+    private static final TypeReference<AuthenticationExtensionsClientOutputs<RegistrationExtensionClientOutput>> CLIENT_EXTENSIONS_TYPE = new TypeReference<>() {
+    };
+
+    //~ Instance fields
+    // ================================================================================================
+    private final JdbcOperations jdbcOperations;
+    private final CborConverter cborConverter;
+    private final JsonConverter jsonConverter;
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private final RowMapper<WebAuthnCredentialRecord> rowMapper = new WebAuthnCredentialRecordRowMapper();
+
+    private UserDetailsService userDetailsService;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public JdbcWebAuthnCredentialRecordManager(JdbcOperations jdbcOperations, ObjectConverter objectConverter) {
+        Assert.notNull(jdbcOperations, "jdbcOperations must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+
+        this.jdbcOperations = jdbcOperations;
+        this.cborConverter = objectConverter.getCborConverter();
+        this.jsonConverter = objectConverter.getJsonConverter();
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        int updated = jdbcOperations.update(DEF_UPDATE_COUNTER_SQL, counter, credentialId);
+        if (updated == 0) {
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        int updated = jdbcOperations.update(DEF_UPDATE_COUNTER_IF_GREATER_SQL, counter, credentialId, counter);
+        if (updated == 0 && !credentialRecordExists(credentialId)) {
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        return updated > 0;
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        List<WebAuthnCredentialRecord> records = jdbcOperations.query(DEF_LOAD_BY_CREDENTIAL_ID_SQL, rowMapper, (Object) credentialId);
+        if (records.isEmpty()) {
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        return records.get(0);
+    }
+
+    @Override
+    public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal) {
+        List<WebAuthnCredentialRecord> records = jdbcOperations.query(DEF_LOAD_BY_PRINCIPAL_NAME_SQL, rowMapper, getPrincipalName(principal));
+        if (records.isEmpty()) {
+            throw new PrincipalNotFoundException("principal not found.");
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Loads only the credentialId and transports columns, without deserializing the rest of the records.
+     *
+     * @param principal user principal
+     * @return {@link PublicKeyCredentialDescriptor} list
+     */
+    @Override
+    public List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        List<PublicKeyCredentialDescriptor> descriptors = jdbcOperations.query(DEF_LOAD_DESCRIPTORS_BY_PRINCIPAL_NAME_SQL,
+                (rs, rowNum) -> new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, rs.getBytes("credential_id"), deserializeTransports(rs.getString("transports"))),
+                getPrincipalName(principal));
+        if (descriptors.isEmpty()) {
+            throw new PrincipalNotFoundException("principal not found.");
+        }
+        return Collections.unmodifiableList(descriptors);
+    }
+
+    @Override
+    public void createCredentialRecord(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        Assert.notNull(webAuthnCredentialRecord, "webAuthnCredentialRecord must not be null");
+        AttestedCredentialData attestedCredentialData = webAuthnCredentialRecord.getAttestedCredentialData();
+        String name = webAuthnCredentialRecord instanceof WebAuthnCredentialRecordImpl ? ((WebAuthnCredentialRecordImpl) webAuthnCredentialRecord).getName() : null;
+        AttestationStatement attestationStatement = webAuthnCredentialRecord.getAttestationStatement();
+        AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput> authenticatorExtensions = webAuthnCredentialRecord.getAuthenticatorExtensions();
+        CollectedClientData clientData = webAuthnCredentialRecord.getClientData();
+        AuthenticationExtensionsClientOutputs<RegistrationExtensionClientOutput> clientExtensions = webAuthnCredentialRecord.getClientExtensions();
+
+        Object[] args = new Object[]{
+                attestedCredentialData.getCredentialId(),
+                getPrincipalName(webAuthnCredentialRecord.getUserPrincipal()),
+                name,
+                webAuthnCredentialRecord.getCounter(),
+                webAuthnCredentialRecord.isUvInitialized(),
+                webAuthnCredentialRecord.isBackupEligible(),
+                webAuthnCredentialRecord.isBackedUp(),
+                attestedCredentialData.getAaguid().getBytes(),
+                cborConverter.writeValueAsBytes(attestedCredentialData.getCOSEKey()),
+                attestationStatement == null ? null : cborConverter.writeValueAsBytes(new AttestationStatementEnvelope(attestationStatement)),
+                authenticatorExtensions == null ? null : cborConverter.writeValueAsBytes(authenticatorExtensions),
+                clientData == null ? null : collectedClientDataConverter.convertToBytes(clientData),
+                clientExtensions == null ? null : jsonConverter.writeValueAsString(clientExtensions),
+                serializeTransports(webAuthnCredentialRecord.getTransports())
+        };
+        int[] argTypes = new int[]{
+                Types.VARBINARY, Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.BOOLEAN, Types.BOOLEAN, Types.BOOLEAN,
+                Types.VARBINARY, Types.VARBINARY, Types.BLOB, Types.BLOB, Types.BLOB, Types.CLOB, Types.VARCHAR
+        };
+        jdbcOperations.update(DEF_INSERT_SQL, args, argTypes);
+    }
+
+    @Override
+    public void deleteCredentialRecord(byte[] credentialId) {
+        int deleted = jdbcOperations.update(DEF_DELETE_SQL, (Object) credentialId);
+        if (deleted == 0) {
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+    }
+
+    @Override
+    public boolean credentialRecordExists(byte[] credentialId) {
+        Integer count = jdbcOperations.queryForObject(DEF_EXISTS_SQL, Integer.class, (Object) credentialId);
+        return count != null && count > 0;
+    }
+
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        jdbcOperations.query(DEF_LOAD_ALL_CREDENTIAL_IDS_SQL, (RowCallbackHandler) rs -> action.accept(rs.getBytes("credential_id")));
+    }
+
+    public UserDetailsService getUserDetailsService() {
+        return userDetailsService;
+    }
+
+    /**
+     * Sets the {@link UserDetailsService} used to resolve the stored principal name into {@link UserDetails}
+     * when a credential record is loaded. If not set, the principal name itself is used as the user principal.
+     *
+     * @param userDetailsService user details service
+     */
+    public void setUserDetailsService(UserDetailsService userDetailsService) {
+        this.userDetailsService = userDetailsService;
+    }
+
+    /**
+     * Returns the name under which credential records of the given principal are stored
+     *
+     * @param principal user principal
+     * @return principal name
+     */
+    protected String getPrincipalName(Object principal) {
+        if (principal instanceof String) {
+            return (String) principal;
+        } else if (principal instanceof UserDetails) {
+            return ((UserDetails) principal).getUsername();
+        } else if (principal instanceof Authentication) {
+            return ((Authentication) principal).getName();
+        } else if (principal instanceof Principal) {
+            return ((Principal) principal).getName();
+        } else {
+            throw new IllegalArgumentException("unexpected principal is specified.");
+        }
+    }
+
+    /**
+     * Resolves the stored principal name into the user principal set to loaded credential records
+     *
+     * @param principalName principal name
+     * @return user principal
+     */
+    protected Serializable resolveUserPrincipal(String principalName) {
+        if (userDetailsService == null) {
+            return principalName;
+        }
+        UserDetails userDetails = userDetailsService.loadUserByUsername(principalName);
+        Assert.isInstanceOf(Serializable.class, userDetails, "userDetails must be serializable");
+        return (Serializable) userDetails;
+    }
+
+    private String serializeTransports(Set<AuthenticatorTransport> transports) {
+        if (transports == null) {
+            return null;
+        }
+        return transports.stream().map(AuthenticatorTransport::getValue).collect(Collectors.joining(","));
+    }
+
+    private Set<AuthenticatorTransport> deserializeTransports(String transports) {
+        if (transports == null) {
+            return null;
+        }
+        return StringUtils.commaDelimitedListToSet(transports).stream()
+                .filter(StringUtils::hasText)
+                .map(AuthenticatorTransport::create)
+                .collect(Collectors.toSet());
+    }
+
+    private class WebAuthnCredentialRecordRowMapper implements RowMapper<WebAuthnCredentialRecord> {
+
+        @Override
+        public WebAuthnCredentialRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
+            byte[] credentialId = rs.getBytes("credential_id");
+            AAGUID aaguid = new AAGUID(rs.getBytes("aaguid"));
+            COSEKey coseKey = cborConverter.readValue(rs.getBytes("cose_key"), COSEKey.class);
+            AttestedCredentialData attestedCredentialData = new AttestedCredentialData(aaguid, credentialId, coseKey);
+
+            byte[] attestationStatementBytes = rs.getBytes("attestation_statement");
+            AttestationStatement attestationStatement = null;
+            if (attestationStatementBytes != null) {
+                AttestationStatementEnvelope envelope = cborConverter.readValue(attestationStatementBytes, AttestationStatementEnvelope.class);
+                attestationStatement = envelope == null ? null : envelope.getAttestationStatement();
+            }
+            byte[] authenticatorExtensionsBytes = rs.getBytes("authenticator_extensions");
+            byte[] clientDataBytes = rs.getBytes("client_data");
+            String clientExtensionsString = rs.getString("client_extensions");
+
+            return new WebAuthnCredentialRecordImpl(
+                    rs.getString("name"),
+                    resolveUserPrincipal(rs.getString("principal_name")),
+                    attestationStatement,
+                    rs.getObject("uv_initialized", Boolean.class),
+                    rs.getObject("backup_eligible", Boolean.class),
+                    rs.getObject("backup_state", Boolean.class),
+                    rs.getLong("counter"),
+                    attestedCredentialData,
+                    authenticatorExtensionsBytes == null ? null : cborConverter.readValue(authenticatorExtensionsBytes, AUTHENTICATOR_EXTENSIONS_TYPE),
+                    clientDataBytes == null ? null : collectedClientDataConverter.convert(clientDataBytes),
+                    clientExtensionsString == null ? null : jsonConverter.readValue(clientExtensionsString, CLIENT_EXTENSIONS_TYPE),
+                    deserializeTransports(rs.getString("transports"))
+            );
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.authenticator.COSEKeyOperation;
+import com.webauthn4j.data.attestation.authenticator.COSEKeyType;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.springframework.security.util.internal.BoundedCache;
+import org.springframework.util.Assert;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A size and time-to-live bounded cache of JCA {@link PublicKey}s decoded from the COSE keys of credential records.
+ * <p>
+ * {@link #wrap(WebAuthnCredentialRecord)} returns a copy of a {@link WebAuthnCredentialRecordImpl} whose COSE key is a
+ * {@link CachingCOSEKey}, so that repeated assertion verifications of the same credential do not decode the COSE key
+ * again. A cached key is only reused while the COSE key of the credential record is unchanged.
+ * As the copy is detached from the given record, the caller must carry the counter verified on the copy back to it.
+ * Records of other types are returned as-is and are verified without the cache.
+ */
+public class PublicKeyCache {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(30);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final BoundedCache<CredentialIdKey, Entry> cache;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public PublicKeyCache(int maximumSize, Duration timeToLive) {
+        this.cache = new BoundedCache<>(maximumSize, timeToLive);
+    }
+
+    public PublicKeyCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns a copy of the credential record whose COSE key returns the cached {@link PublicKey},
+     * or the credential record itself if it cannot be copied
+     *
+     * @param webAuthnCredentialRecord credential record
+     * @return credential record to verify
+     */
+    public WebAuthnCredentialRecord wrap(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        Assert.notNull(webAuthnCredentialRecord, "webAuthnCredentialRecord must not be null");
+        AttestedCredentialData attestedCredentialData = webAuthnCredentialRecord.getAttestedCredentialData();
+        if (!WebAuthnCredentialRecords.isCopyable(webAuthnCredentialRecord) || attestedCredentialData == null || attestedCredentialData.getCOSEKey() == null) {
+            return webAuthnCredentialRecord;
+        }
+        COSEKey coseKey = attestedCredentialData.getCOSEKey();
+        CachingCOSEKey cachingCOSEKey = new CachingCOSEKey(coseKey, getPublicKey(CredentialIdKey.of(attestedCredentialData.getCredentialId()), coseKey));
+        AttestedCredentialData copy = new AttestedCredentialData(attestedCredentialData.getAaguid(), attestedCredentialData.getCredentialId(), cachingCOSEKey);
+        return WebAuthnCredentialRecords.copyOf(webAuthnCredentialRecord, webAuthnCredentialRecord.getCounter(), copy);
+    }
+
+    /**
+     * Evicts the cached public key of the given credentialId
+     *
+     * @param credentialId credentialId
+     */
+    public void evict(byte[] credentialId) {
+        cache.invalidate(CredentialIdKey.of(credentialId));
+    }
+
+    /**
+     * Evicts all cached public keys
+     */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    PublicKey getPublicKey(CredentialIdKey key, COSEKey coseKey) {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.coseKey.equals(coseKey)) {
+            return entry.publicKey;
+        }
+        PublicKey publicKey = coseKey.getPublicKey();
+        if (publicKey != null) {
+            cache.put(key, new Entry(coseKey, publicKey));
+        }
+        return publicKey;
+    }
+
+    private static class Entry {
+
+        private final COSEKey coseKey;
+        private final PublicKey publicKey;
+
+        Entry(COSEKey coseKey, PublicKey publicKey) {
+            this.coseKey = coseKey;
+            this.publicKey = publicKey;
+        }
+    }
+
+    /**
+     * A {@link COSEKey} which returns an already decoded {@link PublicKey}.
+     * All other calls are delegated to the original COSE key, which is available from {@link #getDelegate()}.
+     */
+    public static class CachingCOSEKey implements COSEKey {
+
+        private final COSEKey delegate;
+        private final transient PublicKey publicKey;
+
+        CachingCOSEKey(COSEKey delegate, PublicKey publicKey) {
+            this.delegate = delegate;
+            this.publicKey = publicKey;
+        }
+
+        public COSEKey getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public byte[] getKeyId() {
+            return delegate.getKeyId();
+        }
+
+        @Override
+        public COSEAlgorithmIdentifier getAlgorithm() {
+            return delegate.getAlgorithm();
+        }
+
+        @Override
+        public List<COSEKeyOperation> getKeyOps() {
+            return delegate.getKeyOps();
+        }
+
+        @Override
+        public byte[] getBaseIV() {
+            return delegate.getBaseIV();
+        }
+
+        @Override
+        public COSEKeyType getKeyType() {
+            return delegate.getKeyType();
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return publicKey == null ? delegate.getPublicKey() : publicKey;
+        }
+
+        @Override
+        public PrivateKey getPrivateKey() {
+            return delegate.getPrivateKey();
+        }
+
+        @Override
+        public boolean hasPublicKey() {
+            return delegate.hasPublicKey();
+        }
+
+        @Override
+        public boolean hasPrivateKey() {
+            return delegate.hasPrivateKey();
+        }
+
+        @Override
+        public void validate() {
+            delegate.validate();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof CachingCOSEKey) {
+                return delegate.equals(((CachingCOSEKey) o).delegate);
+            }
+            return delegate.equals(o);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+    }
+}
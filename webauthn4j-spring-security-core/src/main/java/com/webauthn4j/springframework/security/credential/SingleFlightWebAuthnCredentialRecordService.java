@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link WebAuthnCredentialRecordService} decorator which coalesces concurrent lookups of the same credentialId,
+ * so that only one call to the delegate is in flight per credentialId.
+ * <p>
+ * Callers arriving while a lookup is in flight wait for it and receive their own copy of its result, so that a caller
+ * mutating its record does not affect the others. Records which cannot be copied, i.e. instances of types other than
+ * {@link WebAuthnCredentialRecordImpl}, are shared. A waiter whose lookup failed with a
+ * {@link CredentialIdNotFoundException} receives its own exception, caused by the original one; on any other failure,
+ * it calls the delegate itself instead of rethrowing an exception instance thrown to another caller. Nothing is cached
+ * after the lookup completes.
+ */
+public class SingleFlightWebAuthnCredentialRecordService implements WebAuthnCredentialRecordService {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnCredentialRecordService delegate;
+    private final ConcurrentMap<CredentialIdKey, CompletableFuture<WebAuthnCredentialRecord>> inFlightLookups = new ConcurrentHashMap<>();
+    private final LongAdder delegateCallCount = new LongAdder();
+    private final LongAdder coalescedCallCount = new LongAdder();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public SingleFlightWebAuthnCredentialRecordService(WebAuthnCredentialRecordService delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        CredentialIdKey key = CredentialIdKey.of(credentialId);
+        CompletableFuture<WebAuthnCredentialRecord> lookup = new CompletableFuture<>();
+        CompletableFuture<WebAuthnCredentialRecord> inFlight = inFlightLookups.putIfAbsent(key, lookup);
+        if (inFlight != null) {
+            coalescedCallCount.increment();
+            return await(inFlight, credentialId);
+        }
+
+        delegateCallCount.increment();
+        try {
+            WebAuthnCredentialRecord webAuthnCredentialRecord = delegate.loadCredentialRecordByCredentialId(credentialId);
+            lookup.complete(webAuthnCredentialRecord);
+            return webAuthnCredentialRecord;
+        } catch (RuntimeException | Error e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLookups.remove(key, lookup);
+        }
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        delegate.updateCounter(credentialId, counter);
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        return delegate.updateCounterIfGreater(credentialId, counter);
+    }
+
+    @Override
+    public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal) {
+        return delegate.loadCredentialRecordsByUserPrincipal(principal);
+    }
+
+    @Override
+    public List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        return delegate.loadCredentialDescriptorsByUserPrincipal(principal);
+    }
+
+    /**
+     * Returns the number of lookups delegated
+     *
+     * @return number of delegated lookups
+     */
+    public long getDelegateCallCount() {
+        return delegateCallCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups served by a lookup already in flight, i.e. the number of delegate calls saved
+     *
+     * @return number of coalesced lookups
+     */
+    public long getCoalescedCallCount() {
+        return coalescedCallCount.sum();
+    }
+
+    private WebAuthnCredentialRecord await(CompletableFuture<WebAuthnCredentialRecord> lookup, byte[] credentialId) {
+        WebAuthnCredentialRecord webAuthnCredentialRecord;
+        try {
+            webAuthnCredentialRecord = lookup.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CredentialIdNotFoundException) {
+                throw new CredentialIdNotFoundException(cause.getMessage(), cause);
+            }
+            delegateCallCount.increment();
+            return delegate.loadCredentialRecordByCredentialId(credentialId);
+        }
+        return webAuthnCredentialRecord == null ? null : WebAuthnCredentialRecords.copyOf(webAuthnCredentialRecord);
+    }
+
+}
@@ -16,9 +16,12 @@
 
 package com.webauthn4j.springframework.security.credential;
 
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialType;
 import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Core interface for manipulating persisted credential record
@@ -35,6 +38,25 @@ public interface WebAuthnCredentialRecordService {
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException;
 
+    /**
+     * Updates credential record counter only if the stored counter is less than the given counter.
+     * <p>
+     * Implementations backed by a store shared between nodes should perform the comparison and the write atomically,
+     * so that only one of concurrent authentications presenting the same counter succeeds.
+     * The default implementation performs a blind write through {@link #updateCounter(byte[], long)} and always
+     * returns true.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @return true if the counter is updated
+     * @throws CredentialIdNotFoundException if the credential record could not be found
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    default boolean updateCounterIfGreater(byte[] credentialId, long counter) throws CredentialIdNotFoundException {
+        updateCounter(credentialId, counter);
+        return true;
+    }
+
     /**
      * Load {@link WebAuthnCredentialRecord} by credentialId
      * @param credentialId credentialId
@@ -51,4 +73,20 @@ public interface WebAuthnCredentialRecordService {
      */
     List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal);
 
+    /**
+     * Load {@link PublicKeyCredentialDescriptor} list by user principal.
+     * <p>
+     * Options generation only needs the credentialId and the transports of each credential record. Implementations
+     * backed by a persistent store should override this method to load only those attributes.
+     * The default implementation falls back to {@link #loadCredentialRecordsByUserPrincipal(Object)}.
+     *
+     * @param principal user principal
+     * @return {@link PublicKeyCredentialDescriptor} list
+     */
+    default List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        return loadCredentialRecordsByUserPrincipal(principal).stream()
+                .map(credentialRecord -> new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, credentialRecord.getAttestedCredentialData().getCredentialId(), credentialRecord.getTransports()))
+                .collect(Collectors.toList());
+    }
+
 }
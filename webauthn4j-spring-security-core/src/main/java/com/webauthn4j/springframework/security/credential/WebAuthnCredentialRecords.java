@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+
+/**
+ * Internal utility to copy credential records before they are handed out to callers which may mutate them
+ * <p>
+ * Only {@link WebAuthnCredentialRecordImpl} itself is copied. Instances of other record types, including
+ * subclasses of {@link WebAuthnCredentialRecordImpl}, cannot be copied without losing their type and are
+ * returned as-is, so they are shared between callers.
+ */
+final class WebAuthnCredentialRecords {
+
+    private WebAuthnCredentialRecords() {
+    }
+
+    /**
+     * Returns whether {@link #copyOf(WebAuthnCredentialRecord, long)} returns an independent copy of the record
+     *
+     * @param webAuthnCredentialRecord credential record
+     * @return true if the record is copied
+     */
+    static boolean isCopyable(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        return webAuthnCredentialRecord.getClass() == WebAuthnCredentialRecordImpl.class;
+    }
+
+    /**
+     * Returns a copy of the record with the given signature counter, or the record itself if it is not copyable
+     *
+     * @param webAuthnCredentialRecord credential record
+     * @param counter                  signature counter of the copy
+     * @return copy of the credential record
+     */
+    static WebAuthnCredentialRecord copyOf(WebAuthnCredentialRecord webAuthnCredentialRecord, long counter) {
+        if (!isCopyable(webAuthnCredentialRecord)) {
+            return webAuthnCredentialRecord;
+        }
+        return copyOf(webAuthnCredentialRecord, counter, webAuthnCredentialRecord.getAttestedCredentialData());
+    }
+
+    /**
+     * Returns a copy of a copyable record with the given signature counter and attested credential data
+     *
+     * @param webAuthnCredentialRecord credential record, which must be copyable
+     * @param counter                  signature counter of the copy
+     * @param attestedCredentialData   attested credential data of the copy
+     * @return copy of the credential record
+     */
+    static WebAuthnCredentialRecordImpl copyOf(WebAuthnCredentialRecord webAuthnCredentialRecord, long counter, AttestedCredentialData attestedCredentialData) {
+        WebAuthnCredentialRecordImpl source = (WebAuthnCredentialRecordImpl) webAuthnCredentialRecord;
+        return new WebAuthnCredentialRecordImpl(
+                source.getName(),
+                source.getUserPrincipal(),
+                source.getAttestationStatement(),
+                source.isUvInitialized(),
+                source.isBackupEligible(),
+                source.isBackedUp(),
+                counter,
+                attestedCredentialData,
+                source.getAuthenticatorExtensions(),
+                source.getClientData(),
+                source.getClientExtensions(),
+                source.getTransports());
+    }
+
+    /**
+     * Returns a copy of the record, or the record itself if it is not copyable
+     *
+     * @param webAuthnCredentialRecord credential record
+     * @return copy of the credential record
+     */
+    static WebAuthnCredentialRecord copyOf(WebAuthnCredentialRecord webAuthnCredentialRecord) {
+        return copyOf(webAuthnCredentialRecord, webAuthnCredentialRecord.getCounter());
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link WebAuthnCredentialRecordService} decorator which takes signature counter updates off the request thread.
+ * <p>
+ * {@link #updateCounter(byte[], long)} only records the new counter in memory. Multiple updates for the same
+ * credential are merged by keeping the maximum value. Pending updates are written to the delegate in batches by a
+ * background thread, when the number of pending credentials reaches the batch size or when the flush interval
+ * elapses, and are drained on {@link #destroy()}.
+ * <p>
+ * Credential records loaded through this service reflect pending counters, so that the counter check of the next
+ * authentication on the same node is performed against the latest value. Counters written by a flush are remembered
+ * until the end of the next flush, so that a concurrent authentication which loaded the credential record before the
+ * write cannot present the same counter again.
+ */
+public class WriteBehindCounterWebAuthnCredentialRecordService implements WebAuthnCredentialRecordService, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final WebAuthnCredentialRecordService delegate;
+    private final int batchSize;
+    private final ConcurrentMap<CredentialIdKey, Long> pendingCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CredentialIdKey, Long> inFlightCounters = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<CredentialIdKey, Long> writtenCounters = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<CredentialIdKey, Long> previousWrittenCounters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executorService;
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final Object flushLock = new Object();
+    private volatile boolean shutdown = false;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public WriteBehindCounterWebAuthnCredentialRecordService(WebAuthnCredentialRecordService delegate, int batchSize, Duration flushInterval) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.notNull(flushInterval, "flushInterval must not be null");
+        Assert.isTrue(!flushInterval.isNegative() && !flushInterval.isZero(), "flushInterval must be positive");
+
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-counter-write-behind-");
+        threadFactory.setDaemon(true);
+        this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long intervalMillis = flushInterval.toMillis();
+        this.executorService.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public WriteBehindCounterWebAuthnCredentialRecordService(WebAuthnCredentialRecordService delegate) {
+        this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Records the counter update. The update is written to the delegate asynchronously.
+     * An update which is not greater than the counter pending, being or just written on this node is dropped, as is
+     * a zero counter, e.g. of an authenticator which does not implement a signature counter, as it cannot advance
+     * the stored one. After {@link #destroy()}, updates are written synchronously.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        if (shutdown) {
+            delegate.updateCounter(credentialId, counter);
+            return;
+        }
+        if (counter <= 0) {
+            return;
+        }
+        CredentialIdKey key = CredentialIdKey.of(credentialId);
+        if (isWrittenOrInFlight(key, counter)) {
+            return;
+        }
+        pendingCounters.merge(key, counter, Math::max);
+        onPendingCounterAdded();
+    }
+
+    /**
+     * Records the counter update if it is greater than the counter pending or being written on this node.
+     * As the write to the delegate is deferred, the comparison does not cover updates made by other nodes.
+     * After {@link #destroy()}, updates are delegated synchronously.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @return true if the counter update is recorded
+     */
+    @Override
+    public boolean updateCounterIfGreater(byte[] credentialId, long counter) {
+        if (shutdown) {
+            return delegate.updateCounterIfGreater(credentialId, counter);
+        }
+        CredentialIdKey key = CredentialIdKey.of(credentialId);
+        boolean[] updated = new boolean[]{false};
+        // the counters being and just written are checked under the lock of the key, which flush() takes to remove
+        // the pending counter after publishing it as in flight
+        pendingCounters.compute(key, (k, pending) -> {
+            if (pending != null && pending >= counter || isWrittenOrInFlight(k, counter)) {
+                return pending;
+            }
+            updated[0] = true;
+            return counter;
+        });
+        if (updated[0]) {
+            onPendingCounterAdded();
+        }
+        return updated[0];
+    }
+
+    private boolean isWrittenOrInFlight(CredentialIdKey key, long counter) {
+        Long inFlight = inFlightCounters.get(key);
+        if (inFlight != null && inFlight >= counter) {
+            return true;
+        }
+        // the current generation is read first, so that a generation rotated concurrently is still seen as previous
+        Long written = writtenCounters.get(key);
+        if (written != null && written >= counter) {
+            return true;
+        }
+        Long previousWritten = previousWrittenCounters.get(key);
+        return previousWritten != null && previousWritten >= counter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    @Override
+    public WebAuthnCredentialRecord loadCredentialRecordByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = delegate.loadCredentialRecordByCredentialId(credentialId);
+        if (webAuthnCredentialRecord != null) {
+            applyPendingCounter(webAuthnCredentialRecord, CredentialIdKey.of(credentialId));
+        }
+        return webAuthnCredentialRecord;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<WebAuthnCredentialRecord> loadCredentialRecordsByUserPrincipal(Object principal) {
+        List<WebAuthnCredentialRecord> webAuthnCredentialRecords = delegate.loadCredentialRecordsByUserPrincipal(principal);
+        if (!pendingCounters.isEmpty() || !inFlightCounters.isEmpty()) {
+            for (WebAuthnCredentialRecord webAuthnCredentialRecord : webAuthnCredentialRecords) {
+                applyPendingCounter(webAuthnCredentialRecord, CredentialIdKey.of(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId()));
+            }
+        }
+        return webAuthnCredentialRecords;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PublicKeyCredentialDescriptor> loadCredentialDescriptorsByUserPrincipal(Object principal) {
+        return delegate.loadCredentialDescriptorsByUserPrincipal(principal);
+    }
+
+    /**
+     * Writes all pending counter updates to the delegate. A failed write is kept pending, and the other writes are
+     * still attempted; the first failure is rethrown at the end, with the others suppressed.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            previousWrittenCounters = writtenCounters;
+            writtenCounters = new ConcurrentHashMap<>();
+            RuntimeException failure = null;
+            List<CredentialIdKey> keys = new ArrayList<>(pendingCounters.keySet());
+            for (CredentialIdKey key : keys) {
+                Long counter = pendingCounters.get(key);
+                if (counter == null) {
+                    continue;
+                }
+                // published as in flight before it leaves the pending map, so that it is always visible to
+                // updateCounterIfGreater. A greater counter recorded meanwhile stays pending for the next flush.
+                inFlightCounters.merge(key, counter, Math::max);
+                pendingCounters.remove(key, counter);
+                try {
+                    // a conditional write never moves back a counter already advanced by another node
+                    if (!delegate.updateCounterIfGreater(key.getValue(), counter) && isStoredCounterGreater(key, counter)) {
+                        logger.warn("Counter update not applied, as the stored counter is greater; " +
+                                "an authentication on another node may have presented a greater counter");
+                    }
+                    writtenCounters.merge(key, counter, Math::max);
+                } catch (CredentialIdNotFoundException e) {
+                    logger.debug("Discarded counter update for a deleted credential record", e);
+                } catch (RuntimeException e) {
+                    pendingCounters.merge(key, counter, Math::max);
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                } finally {
+                    inFlightCounters.remove(key, counter);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of credentials with a counter update not yet written to the delegate
+     *
+     * @return number of pending counter updates
+     */
+    public int getPendingCount() {
+        return pendingCounters.size();
+    }
+
+    /**
+     * Stops the background flush and drains the pending counter updates
+     */
+    @Override
+    public void destroy() {
+        shutdown = true;
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Background counter flush did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void onPendingCounterAdded() {
+        if (shutdown) {
+            // destroy() may have drained the pending updates concurrently
+            flush();
+        } else if (pendingCounters.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                executorService.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to write counter updates. They will be retried.", e);
+        }
+    }
+
+    private boolean isStoredCounterGreater(CredentialIdKey key, long counter) {
+        try {
+            WebAuthnCredentialRecord stored = delegate.loadCredentialRecordByCredentialId(key.getValue());
+            return stored != null && stored.getCounter() > counter;
+        } catch (RuntimeException e) {
+            logger.debug("Failed to load the stored counter", e);
+            return false;
+        }
+    }
+
+    private void applyPendingCounter(WebAuthnCredentialRecord webAuthnCredentialRecord, CredentialIdKey key) {
+        long counter = webAuthnCredentialRecord.getCounter();
+        Long pending = pendingCounters.get(key);
+        if (pending != null) {
+            counter = Math.max(counter, pending);
+        }
+        Long inFlight = inFlightCounters.get(key);
+        if (inFlight != null) {
+            counter = Math.max(counter, inFlight);
+        }
+        if (counter != webAuthnCredentialRecord.getCounter()) {
+            webAuthnCredentialRecord.setCounter(counter);
+        }
+    }
+}
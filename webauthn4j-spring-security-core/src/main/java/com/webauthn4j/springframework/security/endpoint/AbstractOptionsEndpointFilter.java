@@ -18,6 +18,9 @@ package com.webauthn4j.springframework.security.endpoint;
 
 import com.webauthn4j.converter.util.JsonConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
+import com.webauthn4j.springframework.security.util.internal.ExactPathRequestMatcher;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.support.MessageSourceAccessor;
@@ -27,6 +30,7 @@ import org.springframework.security.authentication.InsufficientAuthenticationExc
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.SpringSecurityMessageSource;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
 import org.springframework.web.filter.GenericFilterBean;
 
@@ -43,9 +47,15 @@ public abstract class AbstractOptionsEndpointFilter extends GenericFilterBean {
      */
     private String filterProcessesUrl;
 
+    /**
+     * Matcher of the requests this filter should get activated on.
+     */
+    private RequestMatcher requestMatcher;
+
     protected MessageSourceAccessor messages = SpringSecurityMessageSource.getAccessor();
     protected JsonConverter jsonConverter;
     private AuthenticationTrustResolver trustResolver;
+    private WebAuthnMetrics metrics = new NoOpWebAuthnMetrics();
 
     // ~ Constructors
     // ===================================================================================================
@@ -64,7 +74,7 @@ public abstract class AbstractOptionsEndpointFilter extends GenericFilterBean {
     }
 
     private void checkConfig() {
-        Assert.notNull(getFilterProcessesUrl(), "filterProcessesUrl must not be null");
+        Assert.notNull(getRequestMatcher(), "requestMatcher must not be null");
         Assert.notNull(jsonConverter, "jsonConverter must not be null");
         Assert.notNull(trustResolver, "trustResolver must not be null");
     }
@@ -77,18 +87,51 @@ public abstract class AbstractOptionsEndpointFilter extends GenericFilterBean {
         this.trustResolver = trustResolver;
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} recording the options generation. By default, nothing is recorded.
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
     public String getFilterProcessesUrl() {
         return filterProcessesUrl;
     }
 
+    /**
+     * Sets the url this filter should get activated on, with any HTTP method.
+     * The request matcher is replaced with one matching the url exactly.
+     *
+     * @param filterProcessesUrl url relative to the context path
+     */
     public void setFilterProcessesUrl(String filterProcessesUrl) {
         this.filterProcessesUrl = filterProcessesUrl;
+        this.requestMatcher = filterProcessesUrl == null ? null : new ExactPathRequestMatcher(filterProcessesUrl);
+    }
+
+    public RequestMatcher getRequestMatcher() {
+        return requestMatcher;
+    }
+
+    /**
+     * Sets the matcher of the requests this filter should get activated on.
+     *
+     * @param requestMatcher request matcher
+     */
+    public void setRequestMatcher(RequestMatcher requestMatcher) {
+        Assert.notNull(requestMatcher, "requestMatcher must not be null");
+        this.requestMatcher = requestMatcher;
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, Serializable options) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(options);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        writeJson(httpServletResponse, options);
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
@@ -101,10 +144,19 @@ public abstract class AbstractOptionsEndpointFilter extends GenericFilterBean {
             errorResponse = new ErrorResponse("The server encountered an internal error");
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        writeJson(httpServletResponse, errorResponse);
+    }
+
+    /**
+     * Serializes the value to UTF-8 JSON bytes and writes them to the response output stream, with its
+     * Content-Length, without an intermediate String or a re-encoding through the response writer.
+     */
+    private void writeJson(HttpServletResponse httpServletResponse, Object value) throws IOException {
+        byte[] bytes = jsonConverter.writeValueAsBytes(value);
+        httpServletResponse.setContentType("application/json");
+        httpServletResponse.setContentLength(bytes.length);
+        httpServletResponse.getOutputStream().write(bytes);
     }
 
     protected Authentication getAuthentication() {
@@ -118,13 +170,13 @@ public abstract class AbstractOptionsEndpointFilter extends GenericFilterBean {
     }
 
     /**
-     * The filter will be used in case the URL of the request contains the FILTER_URL.
+     * The filter will be used in case the request matches the request matcher.
      *
      * @param request request used to determine whether to enable this filter
      * @return true if this filter should be used
      */
     protected boolean processFilter(HttpServletRequest request) {
-        return (request.getRequestURI().contains(getFilterProcessesUrl()));
+        return requestMatcher != null && requestMatcher.matches(request);
     }
 
 }
@@ -20,12 +20,14 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.PublicKeyCredentialRequestOptions;
 import com.webauthn4j.data.PublicKeyCredentialRpEntity;
 import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.options.AssertionOptions;
 import com.webauthn4j.springframework.security.options.AssertionOptionsProvider;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.web.FilterInvocation;
 
 import java.io.IOException;
@@ -68,9 +70,11 @@ public class AssertionOptionsEndpointFilter extends AbstractOptionsEndpointFilte
             chain.doFilter(request, response);
             return;
         }
+        // exposes the response to challenge repositories which write to it, as CsrfFilter does
+        fi.getRequest().setAttribute(HttpServletResponse.class.getName(), fi.getResponse());
 
         try {
-            AssertionOptions assertionOptions = assertionOptionsProvider.getAssertionOptions(fi.getRequest(), getAuthentication());
+            AssertionOptions assertionOptions = getMetrics().record(WebAuthnMetrics.ASSERTION_OPTIONS, () -> assertionOptionsProvider.getAssertionOptions(fi.getRequest(), getAuthentication()));
             writeResponse(fi.getResponse(), assertionOptions);
         } catch (RuntimeException e) {
             logger.debug(e);
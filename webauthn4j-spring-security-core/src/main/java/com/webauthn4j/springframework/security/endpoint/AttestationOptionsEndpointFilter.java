@@ -20,12 +20,14 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
 import com.webauthn4j.data.PublicKeyCredentialRpEntity;
 import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
 import com.webauthn4j.springframework.security.options.AttestationOptions;
 import com.webauthn4j.springframework.security.options.AttestationOptionsProvider;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.web.FilterInvocation;
 
 import java.io.IOException;
@@ -64,9 +66,11 @@ public class AttestationOptionsEndpointFilter extends AbstractOptionsEndpointFil
             chain.doFilter(request, response);
             return;
         }
+        // exposes the response to challenge repositories which write to it, as CsrfFilter does
+        fi.getRequest().setAttribute(HttpServletResponse.class.getName(), fi.getResponse());
 
         try {
-            AttestationOptions attestationOptions = attestationOptionsProvider.getAttestationOptions(fi.getRequest(), getAuthentication());
+            AttestationOptions attestationOptions = getMetrics().record(WebAuthnMetrics.ATTESTATION_OPTIONS, () -> attestationOptionsProvider.getAttestationOptions(fi.getRequest(), getAuthentication()));
             writeResponse(fi.getResponse(), attestationOptions);
         } catch (RuntimeException e) {
             logger.debug(e);
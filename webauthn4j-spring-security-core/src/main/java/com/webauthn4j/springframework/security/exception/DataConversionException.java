@@ -16,6 +16,7 @@
 
 package com.webauthn4j.springframework.security.exception;
 
+import com.webauthn4j.springframework.security.util.internal.ExceptionUtil;
 import org.springframework.security.core.AuthenticationException;
 
 public class DataConversionException extends AuthenticationException {
@@ -26,4 +27,13 @@ public class DataConversionException extends AuthenticationException {
     public DataConversionException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * Skips the stack trace capture when created by a translation with the stack trace disabled, as the
+     * {@link WebAuthnAuthenticationException}s do
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return ExceptionUtil.isStackTraceSuppressed() ? this : super.fillInStackTrace();
+    }
 }
@@ -16,8 +16,17 @@
 
 package com.webauthn4j.springframework.security.exception;
 
+import com.webauthn4j.springframework.security.util.internal.ExceptionUtil;
 import org.springframework.security.core.AuthenticationException;
 
+/**
+ * Base class of the WebAuthn {@link AuthenticationException}s.
+ * <p>
+ * As the WebAuthn exceptions wrap a webauthn4j exception, which carries the stack trace of the failure, the components
+ * translating webauthn4j exceptions can be configured not to capture the stack trace of the WebAuthn exceptions they
+ * create, e.g. with {@code WebAuthnAuthenticationProvider#setStackTraceEnabled(boolean)}. This saves CPU and
+ * allocation when verifications fail in large numbers, e.g. under credential stuffing.
+ */
 public class WebAuthnAuthenticationException extends AuthenticationException {
 
     public WebAuthnAuthenticationException(String message, Throwable cause) {
@@ -28,4 +37,9 @@ public class WebAuthnAuthenticationException extends AuthenticationException {
         super(message);
     }
 
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return ExceptionUtil.isStackTraceSuppressed() ? this : super.fillInStackTrace();
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link WebAuthnMetrics} implementation recording to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * Each operation is recorded to the {@value #METER_NAME} timer, whose count serves as the counter of the operation,
+ * tagged with the operation name, the outcome ({@code success} or {@code failure}) and the simple name of the
+ * exception class, or {@code none}. As the exceptions of the verification are translated by the components before
+ * they reach this class, the exception tag carries the Spring Security exception type.
+ * <p>
+ * Micrometer is an optional dependency; this class requires it on the classpath.
+ */
+public class MicrometerWebAuthnMetrics implements WebAuthnMetrics {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String METER_NAME = "webauthn.operations";
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+    private static final String NONE = "none";
+
+    //~ Instance fields
+    // ================================================================================================
+    private final MeterRegistry meterRegistry;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public MicrometerWebAuthnMetrics(MeterRegistry meterRegistry) {
+        Assert.notNull(meterRegistry, "meterRegistry must not be null");
+        this.meterRegistry = meterRegistry;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public <T> T record(String operation, Supplier<T> supplier) {
+        long start = meterRegistry.config().clock().monotonicTime();
+        try {
+            T result = supplier.get();
+            stop(operation, SUCCESS, NONE, start);
+            return result;
+        } catch (RuntimeException | Error e) {
+            stop(operation, FAILURE, e.getClass().getSimpleName(), start);
+            throw e;
+        }
+    }
+
+    private void stop(String operation, String outcome, String exception, long start) {
+        long duration = meterRegistry.config().clock().monotonicTime() - start;
+        getTimer(new TimerKey(operation, outcome, exception)).record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer getTimer(TimerKey key) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(key, k -> Timer.builder(METER_NAME)
+                    .description("WebAuthn operations")
+                    .tag("operation", k.operation)
+                    .tag("outcome", k.outcome)
+                    .tag("exception", k.exception)
+                    .register(meterRegistry));
+        }
+        return timer;
+    }
+
+    private static class TimerKey {
+
+        private final String operation;
+        private final String outcome;
+        private final String exception;
+
+        TimerKey(String operation, String outcome, String exception) {
+            this.operation = operation;
+            this.outcome = outcome;
+            this.exception = exception;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TimerKey timerKey = (TimerKey) o;
+            return operation.equals(timerKey.operation) && outcome.equals(timerKey.outcome) && exception.equals(timerKey.exception);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, outcome, exception);
+        }
+    }
+
+}
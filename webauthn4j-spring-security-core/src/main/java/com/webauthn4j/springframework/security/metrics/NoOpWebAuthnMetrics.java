@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link WebAuthnMetrics} which runs the operations without recording anything.
+ * It is the default of the components taking a {@link WebAuthnMetrics}.
+ */
+public class NoOpWebAuthnMetrics implements WebAuthnMetrics {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T record(String operation, Supplier<T> supplier) {
+        return supplier.get();
+    }
+
+}
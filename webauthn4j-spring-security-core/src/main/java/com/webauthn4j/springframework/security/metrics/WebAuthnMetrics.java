@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Records the duration and the outcome of the WebAuthn operations, such as the parameter decoding and the
+ * verification of an authentication.
+ * <p>
+ * Components default to {@link NoOpWebAuthnMetrics}, which runs the operations without recording anything.
+ */
+public interface WebAuthnMetrics {
+
+    String AUTHENTICATION = "authentication";
+    String AUTHENTICATION_DECODE = "authentication.decode";
+    String AUTHENTICATION_SERVER_PROPERTY = "authentication.server_property";
+    String AUTHENTICATION_RETRIEVE_CREDENTIAL_RECORD = "authentication.retrieve_credential_record";
+    String AUTHENTICATION_VERIFY = "authentication.verify";
+    String AUTHENTICATION_UPDATE_COUNTER = "authentication.update_counter";
+    String ATTESTATION_OPTIONS = "attestation_options";
+    String ASSERTION_OPTIONS = "assertion_options";
+    String REGISTRATION_VALIDATE = "registration.validate";
+
+    /**
+     * Runs the operation, and records its duration and outcome
+     *
+     * @param operation name of the operation
+     * @param supplier  the operation
+     * @param <T>       result type
+     * @return the result of the operation
+     */
+    <T> T record(String operation, Supplier<T> supplier);
+
+    /**
+     * Runs the operation, and records its duration and outcome
+     *
+     * @param operation name of the operation
+     * @param runnable  the operation
+     */
+    default void record(String operation, Runnable runnable) {
+        record(operation, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+}
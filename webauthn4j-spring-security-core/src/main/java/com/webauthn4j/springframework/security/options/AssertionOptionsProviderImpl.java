@@ -17,7 +17,6 @@
 package com.webauthn4j.springframework.security.options;
 
 import com.webauthn4j.data.PublicKeyCredentialDescriptor;
-import com.webauthn4j.data.PublicKeyCredentialType;
 import com.webauthn4j.data.UserVerificationRequirement;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionClientInput;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
@@ -31,7 +30,6 @@ import org.springframework.util.Assert;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * An {@link AssertionOptionsProvider} implementation
@@ -158,9 +156,7 @@ public class AssertionOptionsProviderImpl implements AssertionOptionsProvider {
             return Collections.emptyList();
         }
         try {
-            return getWebAuthnCredentialRecordService().loadCredentialRecordsByUserPrincipal(authentication.getName()).stream()
-                    .map(credentialRecord -> new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, credentialRecord.getAttestedCredentialData().getCredentialId(), credentialRecord.getTransports()))
-                    .collect(Collectors.toList());
+            return getWebAuthnCredentialRecordService().loadCredentialDescriptorsByUserPrincipal(authentication.getName());
         } catch (PrincipalNotFoundException e) {
             return Collections.emptyList();
         }
@@ -31,7 +31,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * An {@link AssertionOptionsProvider} implementation
@@ -202,9 +201,7 @@ public class AttestationOptionsProviderImpl implements AttestationOptionsProvide
             return Collections.emptyList();
         }
         try {
-            return getWebAuthnCredentialRecordService().loadCredentialRecordsByUserPrincipal(authentication.getName()).stream()
-                    .map(credentialRecord -> new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, credentialRecord.getAttestedCredentialData().getCredentialId(), credentialRecord.getTransports()))
-                    .collect(Collectors.toList());
+            return getWebAuthnCredentialRecordService().loadCredentialDescriptorsByUserPrincipal(authentication.getName());
         } catch (PrincipalNotFoundException e) {
             return Collections.emptyList();
         }
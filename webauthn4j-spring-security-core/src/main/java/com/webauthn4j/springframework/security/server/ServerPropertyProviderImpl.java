@@ -31,6 +31,11 @@ import org.springframework.util.Assert;
  */
 public class ServerPropertyProviderImpl implements ServerPropertyProvider {
 
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String SERVER_PROPERTY_ATTR_NAME = ServerPropertyProviderImpl.class.getName().concat(".SERVER_PROPERTY");
+
     //~ Instance fields
     // ================================================================================================
     private String rpId;
@@ -51,12 +56,28 @@ public class ServerPropertyProviderImpl implements ServerPropertyProvider {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The {@link ServerProperty} is memoized in the request, so that callers within a request share one instance
+     * and the challenge is consumed only once.
      */
     public ServerProperty provide(HttpServletRequest request) {
+        ServerProperty serverProperty = (ServerProperty) request.getAttribute(SERVER_PROPERTY_ATTR_NAME);
+        if (serverProperty == null) {
+            serverProperty = createServerProperty(request);
+            request.setAttribute(SERVER_PROPERTY_ATTR_NAME, serverProperty);
+        }
+        return serverProperty;
+    }
 
+    private ServerProperty createServerProperty(HttpServletRequest request) {
         Origin origin = ServletUtil.getOrigin(request);
         String effectiveRpId = getRpId(request);
-        Challenge challenge = challengeRepository.loadOrGenerateChallenge(request);
+        // the challenge is consumed, so that it cannot be replayed
+        Challenge challenge = challengeRepository.loadAndRemoveChallenge(request);
+        if (challenge == null) {
+            // a challenge nobody holds makes the verification fail as a bad challenge
+            challenge = challengeRepository.generateChallenge();
+        }
 
         return new ServerProperty(origin, effectiveRpId, challenge, null); // tokenBinding is not supported by Servlet API as of 4.0
     }
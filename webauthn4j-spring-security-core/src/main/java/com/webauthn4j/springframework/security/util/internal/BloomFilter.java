@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util.internal;
+
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Internal thread-safe Bloom filter of byte arrays.
+ * <p>
+ * The filter is sized from the expected number of insertions and the false positive probability. Bits are set
+ * without locking. The hash is seeded randomly per instance, so that members colliding with chosen keys cannot be
+ * predicted from outside.
+ */
+public class BloomFilter {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long seed;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param expectedInsertions        expected number of insertions
+     * @param falsePositiveProbability  false positive probability when the expected number of insertions is reached
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        Assert.isTrue(expectedInsertions > 0, "expectedInsertions must be positive");
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability must be between 0 and 1");
+        long optimalBitCount = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (optimalBitCount + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.seed = new SecureRandom().nextLong();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public void put(byte[] value) {
+        long hash1 = hash(value, seed);
+        long hash2 = mix(hash1 ^ ~seed) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * Returns false if the value has definitely not been put, true if it might have been
+     *
+     * @param value value
+     * @return false if the value is definitely absent
+     */
+    public boolean mightContain(byte[] value) {
+        long hash1 = hash(value, seed);
+        long hash2 = mix(hash1 ^ ~seed) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private static long hash(byte[] value, long seed) {
+        // FNV-1a over the bytes, finalized with the SplitMix64 mixer
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash ^ value.length);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
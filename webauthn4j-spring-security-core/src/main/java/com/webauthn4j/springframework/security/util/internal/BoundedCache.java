@@ -0,0 +1,287 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util.internal;
+
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Internal size and time-to-live bounded cache with approximate least-recently-used eviction.
+ * <p>
+ * Entries are held in a {@link ConcurrentHashMap}, so reads take no lock and do not contend with each other.
+ * Each read stamps the entry with a logical access time. When a write pushes the cache over its maximum size,
+ * the least recently used entry among a sample of entries taken from a random position is evicted, which is exact
+ * for caches no larger than the sample and approximate above that.
+ * <p>
+ * Loaders passed to {@link #get(Object, Function)} are invoked outside of any lock,
+ * so a slow backing store does not block readers of other keys. A loaded value is cached only if no invalidation of
+ * its key happened during the load, so that a load which read the backing store before a write cannot cache a stale
+ * value after the invalidation of the write. Invalidations are tracked per stripe of keys, so an invalidation may
+ * also keep a concurrent load of another key from being cached.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedCache<K, V> {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+    private static final int VERSION_STRIPES = 64;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final int maximumSize;
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<K, Entry<V>> map = new ConcurrentHashMap<>();
+    private final AtomicLong accessTick = new AtomicLong();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize maximum number of entries
+     * @param timeToLive  time-to-live of an entry. {@link Duration#ZERO} means entries never expire.
+     */
+    public BoundedCache(int maximumSize, Duration timeToLive) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+        Assert.notNull(timeToLive, "timeToLive must not be null");
+        Assert.isTrue(!timeToLive.isNegative(), "timeToLive must not be negative");
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLive.toMillis();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the cached value, or null if absent or expired. Hits and misses are recorded.
+     *
+     * @param key key
+     * @return cached value or null
+     */
+    public V get(K key) {
+        V value = getIfPresent(key);
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, or loads and caches it with the supplied loader.
+     * A null value returned by the loader is not cached, nor is a value whose key was invalidated during the load.
+     *
+     * @param key    key
+     * @param loader loader invoked on a miss
+     * @return value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        int stripe = stripeOf(key);
+        long version = versions.get(stripe);
+        value = loader.apply(key);
+        if (value != null) {
+            Entry<V> entry = createEntry(value);
+            // checked under the lock of the key, as invalidate() advances the version before removing the key
+            map.compute(key, (k, existing) -> versions.get(stripe) == version ? entry : existing);
+            evictOverflow();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, or null if absent or expired, without recording statistics.
+     *
+     * @param key key
+     * @return cached value or null
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(clock.millis())) {
+            if (map.remove(key, entry)) {
+                evictionCount.increment();
+            }
+            return null;
+        }
+        entry.lastAccess = accessTick.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        Assert.notNull(value, "value must not be null");
+        map.put(key, createEntry(value));
+        evictOverflow();
+    }
+
+    public void invalidate(K key) {
+        invalidateLoads(key);
+        map.remove(key);
+    }
+
+    /**
+     * Keeps the loads of the key in progress from being cached, without removing the cached value, e.g. when the
+     * cached value is updated in place after a write to the backing store
+     *
+     * @param key key
+     */
+    public void invalidateLoads(K key) {
+        versions.incrementAndGet(stripeOf(key));
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    private Entry<V> createEntry(V value) {
+        long expiresAt = timeToLiveMillis == 0 ? Long.MAX_VALUE : clock.millis() + timeToLiveMillis;
+        return new Entry<>(value, expiresAt, accessTick.incrementAndGet());
+    }
+
+    private static int stripeOf(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    private void evictOverflow() {
+        while (map.size() > maximumSize) {
+            evictOne();
+        }
+    }
+
+    /**
+     * Evicts an expired entry, or the least recently used entry of the sample
+     */
+    private void evictOne() {
+        long now = clock.millis();
+        Map.Entry<K, Entry<V>>[] victim = sample(randomPart(), now);
+        if (victim[0] == null) {
+            // the random part of the table may hold no entry
+            victim = sample(map.entrySet().spliterator(), now);
+        }
+        if (victim[0] != null && map.remove(victim[0].getKey(), victim[0].getValue())) {
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Returns a spliterator over a random part of the table, holding about twice the sample size of entries, so that
+     * the sample is not always taken from the first buckets
+     */
+    private Spliterator<Map.Entry<K, Entry<V>>> randomPart() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Spliterator<Map.Entry<K, Entry<V>>> spliterator = map.entrySet().spliterator();
+        while (spliterator.estimateSize() > EVICTION_SAMPLE_SIZE * 2L) {
+            Spliterator<Map.Entry<K, Entry<V>>> prefix = spliterator.trySplit();
+            if (prefix == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                spliterator = prefix;
+            }
+        }
+        return spliterator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, Entry<V>>[] sample(Spliterator<Map.Entry<K, Entry<V>>> spliterator, long now) {
+        Map.Entry<K, Entry<V>>[] victim = new Map.Entry[1];
+        for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+            boolean advanced = spliterator.tryAdvance(candidate -> {
+                if (victim[0] != null && victim[0].getValue().isExpired(now)) {
+                    return;
+                }
+                Entry<V> entry = candidate.getValue();
+                if (victim[0] == null || entry.isExpired(now) || entry.lastAccess < victim[0].getValue().lastAccess) {
+                    victim[0] = candidate;
+                }
+            });
+            if (!advanced || victim[0].getValue().isExpired(now)) {
+                break;
+            }
+        }
+        return victim;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        Entry(V value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
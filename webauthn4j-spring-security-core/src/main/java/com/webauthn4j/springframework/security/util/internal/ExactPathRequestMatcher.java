@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util.internal;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.Assert;
+
+/**
+ * Internal {@link RequestMatcher} which matches the request URI, relative to the context path, against a fixed path,
+ * and optionally the HTTP method. Unlike pattern based matchers, it neither allocates nor parses per request.
+ */
+public class ExactPathRequestMatcher implements RequestMatcher {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String path;
+    private final HttpMethod httpMethod;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param path       path relative to the context path
+     * @param httpMethod HTTP method to match, or null to match any method
+     */
+    public ExactPathRequestMatcher(String path, HttpMethod httpMethod) {
+        Assert.hasText(path, "path must not be empty or null");
+        this.path = path;
+        this.httpMethod = httpMethod;
+    }
+
+    public ExactPathRequestMatcher(String path) {
+        this(path, null);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public boolean matches(HttpServletRequest request) {
+        if (httpMethod != null && !httpMethod.matches(request.getMethod())) {
+            return false;
+        }
+        String requestURI = request.getRequestURI();
+        if (requestURI == null) {
+            return false;
+        }
+        String contextPath = request.getContextPath();
+        int offset = contextPath == null ? 0 : contextPath.length();
+        return requestURI.length() == offset + path.length()
+                && (offset == 0 || requestURI.startsWith(contextPath))
+                && requestURI.startsWith(path, offset);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public HttpMethod getHttpMethod() {
+        return httpMethod;
+    }
+
+    @Override
+    public String toString() {
+        return "ExactPathRequestMatcher [path='" + path + "', httpMethod=" + httpMethod + "]";
+    }
+}
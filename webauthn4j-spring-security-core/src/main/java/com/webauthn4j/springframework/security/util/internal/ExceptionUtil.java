@@ -21,75 +21,116 @@ import com.webauthn4j.util.exception.WebAuthnException;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.AuthenticationException;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
 /**
  * Internal utility to handle exceptions
  */
 public class ExceptionUtil {
 
+    /**
+     * Set while a translation with the stack trace disabled creates its exception, as the stack trace is captured in
+     * the {@link Throwable} constructor, before any state of the exception instance is set
+     */
+    private static final ThreadLocal<Boolean> STACK_TRACE_SUPPRESSED = new ThreadLocal<>();
+
+    /**
+     * Translators by webauthn4j exception class. An exception is translated by the translator of its nearest
+     * registered superclass. This matches the instanceof chain this table replaced, which checked every registered
+     * class before its registered superclasses, e.g. {@code KeyDescriptionValidationException} before
+     * {@code BadAttestationStatementException}, and {@code VerificationException} last. ExceptionUtilTest checks the
+     * table against that chain.
+     */
+    private static final Map<Class<?>, Function<WebAuthnException, RuntimeException>> TRANSLATORS = new HashMap<>();
+
+    static {
+        // ValidationExceptions
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadAaguidException.class, e -> new BadAaguidException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadAlgorithmException.class, e -> new BadAlgorithmException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadAttestationStatementException.class, e -> new BadAttestationStatementException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.KeyDescriptionValidationException.class, e -> new KeyDescriptionValidationException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadChallengeException.class, e -> new BadChallengeException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadOriginException.class, e -> new BadOriginException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadRpIdException.class, e -> new BadRpIdException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.BadSignatureException.class, e -> new BadSignatureException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.metadata.exception.BadStatusException.class, e -> new BadStatusException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.CertificateException.class, e -> new CertificateException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.ConstraintViolationException.class, e -> new ConstraintViolationException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.MaliciousCounterValueException.class, e -> new MaliciousCounterValueException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.InconsistentClientDataTypeException.class, e -> new InconsistentClientDataTypeException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.MissingChallengeException.class, e -> new MissingChallengeException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.PublicKeyMismatchException.class, e -> new PublicKeyMismatchException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.SelfAttestationProhibitedException.class, e -> new SelfAttestationProhibitedException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.TokenBindingException.class, e -> new TokenBindingException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.TrustAnchorNotFoundException.class, e -> new TrustAnchorNotFoundException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.UnexpectedExtensionException.class, e -> new UnexpectedExtensionException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.UserNotPresentException.class, e -> new UserNotPresentException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.UserNotVerifiedException.class, e -> new UserNotVerifiedException(e.getMessage(), e));
+        TRANSLATORS.put(com.webauthn4j.verifier.exception.VerificationException.class, e -> new ValidationException("WebAuthn validation error", e));
+        // DataConversionException
+        TRANSLATORS.put(com.webauthn4j.converter.exception.DataConversionException.class, e -> new DataConversionException("WebAuthn data conversion error", e));
+    }
+
+    /**
+     * Translator of each exception class, resolved once per class from the nearest registered superclass
+     */
+    private static final ClassValue<Function<WebAuthnException, RuntimeException>> RESOLVED_TRANSLATORS = new ClassValue<>() {
+        @Override
+        protected Function<WebAuthnException, RuntimeException> computeValue(Class<?> type) {
+            for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+                Function<WebAuthnException, RuntimeException> translator = TRANSLATORS.get(clazz);
+                if (translator != null) {
+                    return translator;
+                }
+            }
+            return e -> new AuthenticationServiceException(null, e);
+        }
+    };
+
     private ExceptionUtil() {
     }
 
     /**
      * Wraps WebAuthnAuthentication to proper {@link RuntimeException} (mainly {@link AuthenticationException} subclass.
+     * The wrapping exception is looked up by the class of the exception, in constant time.
      *
      * @param e exception to be wrapped
      * @return wrapping exception
      */
-    @SuppressWarnings("squid:S3776")
     public static RuntimeException wrapWithAuthenticationException(WebAuthnException e) {
-        // ValidationExceptions
-        if (e instanceof com.webauthn4j.verifier.exception.BadAaguidException) {
-            return new BadAaguidException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadAlgorithmException) {
-            return new BadAlgorithmException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadAttestationStatementException) {
-            if (e instanceof com.webauthn4j.verifier.exception.KeyDescriptionValidationException) {
-                return new KeyDescriptionValidationException(e.getMessage(), e);
-            } else {
-                return new BadAttestationStatementException(e.getMessage(), e);
-            }
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadChallengeException) {
-            return new BadChallengeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadOriginException) {
-            return new BadOriginException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadRpIdException) {
-            return new BadRpIdException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.BadSignatureException) {
-            return new BadSignatureException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.metadata.exception.BadStatusException) {
-            return new BadStatusException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.CertificateException) {
-            return new CertificateException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.ConstraintViolationException) {
-            return new ConstraintViolationException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.MaliciousCounterValueException) {
-            return new MaliciousCounterValueException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.InconsistentClientDataTypeException) {
-            return new InconsistentClientDataTypeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.MissingChallengeException) {
-            return new MissingChallengeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.PublicKeyMismatchException) {
-            return new PublicKeyMismatchException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.SelfAttestationProhibitedException) {
-            return new SelfAttestationProhibitedException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.TokenBindingException) {
-            return new TokenBindingException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.TrustAnchorNotFoundException) {
-            return new TrustAnchorNotFoundException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.UnexpectedExtensionException) {
-            return new UnexpectedExtensionException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.UserNotPresentException) {
-            return new UserNotPresentException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.UserNotVerifiedException) {
-            return new UserNotVerifiedException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.verifier.exception.VerificationException) {
-            return new ValidationException("WebAuthn validation error", e);
+        return wrapWithAuthenticationException(e, true);
+    }
+
+    /**
+     * Wraps WebAuthnAuthentication to proper {@link RuntimeException} (mainly {@link AuthenticationException} subclass.
+     * If the stack trace is disabled, the WebAuthn exception created does not capture its stack trace; the wrapped
+     * exception keeps its own.
+     *
+     * @param e                 exception to be wrapped
+     * @param stackTraceEnabled false to create a wrapping exception without stack trace
+     * @return wrapping exception
+     */
+    public static RuntimeException wrapWithAuthenticationException(WebAuthnException e, boolean stackTraceEnabled) {
+        Function<WebAuthnException, RuntimeException> translator = RESOLVED_TRANSLATORS.get(e.getClass());
+        if (stackTraceEnabled) {
+            return translator.apply(e);
         }
-        // DataConversionException
-        else if (e instanceof com.webauthn4j.converter.exception.DataConversionException) {
-            return new DataConversionException("WebAuthn data conversion error", e);
-        } else {
-            return new AuthenticationServiceException(null, e);
+        STACK_TRACE_SUPPRESSED.set(Boolean.TRUE);
+        try {
+            return translator.apply(e);
+        } finally {
+            STACK_TRACE_SUPPRESSED.remove();
         }
     }
+
+    /**
+     * Returns whether the exception being created on the current thread must not capture its stack trace
+     *
+     * @return true if the stack trace capture is suppressed
+     */
+    public static boolean isStackTraceSuppressed() {
+        return STACK_TRACE_SUPPRESSED.get() != null;
+    }
 }
@@ -20,11 +20,19 @@ package com.webauthn4j.springframework.security.util.internal;
 import com.webauthn4j.data.client.Origin;
 import jakarta.servlet.ServletRequest;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Internal utility to handle servlet
  */
 public class ServletUtil {
 
+    // the server name comes from the Host header, so the number of cached origins is bounded
+    private static final int MAXIMUM_CACHED_ORIGINS = 256;
+    private static final Map<OriginKey, Origin> origins = new ConcurrentHashMap<>();
+
     private ServletUtil() {
     }
 
@@ -35,7 +43,43 @@ public class ServletUtil {
      * @return the {@link Origin}
      */
     public static Origin getOrigin(ServletRequest request) {
-        String url = String.format("%s://%s:%s", request.getScheme(), request.getServerName(), request.getServerPort());
-        return new Origin(url);
+        OriginKey key = new OriginKey(request.getScheme(), request.getServerName(), request.getServerPort());
+        Origin origin = origins.get(key);
+        if (origin == null) {
+            if (origins.size() >= MAXIMUM_CACHED_ORIGINS) {
+                origins.clear();
+            }
+            origin = new Origin(key.scheme + "://" + key.serverName + ":" + key.port);
+            origins.put(key, origin);
+        }
+        return origin;
+    }
+
+    private static class OriginKey {
+
+        private final String scheme;
+        private final String serverName;
+        private final int port;
+
+        OriginKey(String scheme, String serverName, int port) {
+            this.scheme = scheme;
+            this.serverName = serverName;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            OriginKey that = (OriginKey) o;
+            return port == that.port &&
+                    Objects.equals(scheme, that.scheme) &&
+                    Objects.equals(serverName, that.serverName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scheme, serverName, port);
+        }
     }
 }
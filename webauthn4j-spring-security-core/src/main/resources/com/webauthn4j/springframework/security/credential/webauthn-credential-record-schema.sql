@@ -0,0 +1,21 @@
+-- Reference schema for JdbcWebAuthnCredentialRecordManager.
+-- Binary column types may need to be adjusted for the target database (e.g. BYTEA on PostgreSQL).
+CREATE TABLE webauthn_credential_record (
+  credential_id             VARBINARY(1023)  NOT NULL,
+  principal_name            VARCHAR(255)     NOT NULL,
+  name                      VARCHAR(255),
+  counter                   BIGINT           NOT NULL,
+  uv_initialized            BOOLEAN,
+  backup_eligible           BOOLEAN,
+  backup_state              BOOLEAN,
+  aaguid                    VARBINARY(16)    NOT NULL,
+  cose_key                  VARBINARY(2048)  NOT NULL,
+  attestation_statement     BLOB,
+  authenticator_extensions  BLOB,
+  client_data               BLOB,
+  client_extensions         CLOB,
+  transports                VARCHAR(255),
+  PRIMARY KEY (credential_id)
+);
+
+CREATE INDEX ix_webauthn_credential_record_principal_name ON webauthn_credential_record (principal_name);
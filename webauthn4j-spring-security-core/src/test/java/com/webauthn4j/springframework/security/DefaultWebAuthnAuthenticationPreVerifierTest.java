@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.springframework.security.exception.*;
+import com.webauthn4j.util.MessageDigestUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DefaultWebAuthnAuthenticationPreVerifierTest {
+
+    private final ObjectConverter objectConverter = new ObjectConverter();
+    private final CollectedClientDataConverter collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    private final DefaultWebAuthnAuthenticationPreVerifier target = new DefaultWebAuthnAuthenticationPreVerifier(objectConverter);
+
+    private final Origin origin = new Origin("https://example.com");
+    private final Challenge challenge = new DefaultChallenge();
+    private final WebAuthnAuthenticationParameters parameters = new WebAuthnAuthenticationParameters(
+            new ServerProperty(origin, "example.com", challenge, null), true, true);
+
+    @Test
+    public void preVerify_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_GET, challenge, origin, "example.com", null);
+        assertThatCode(() -> target.preVerify(request, parameters)).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void preVerify_with_bad_type_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_CREATE, challenge, origin, "example.com", null);
+        assertThatThrownBy(() -> target.preVerify(request, parameters)).isInstanceOf(InconsistentClientDataTypeException.class);
+    }
+
+    @Test
+    public void preVerify_with_bad_challenge_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_GET, new DefaultChallenge(), origin, "example.com", null);
+        assertThatThrownBy(() -> target.preVerify(request, parameters)).isInstanceOf(BadChallengeException.class);
+    }
+
+    @Test
+    public void preVerify_with_bad_origin_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_GET, challenge, new Origin("https://evil.example.net"), "example.com", null);
+        assertThatThrownBy(() -> target.preVerify(request, parameters)).isInstanceOf(BadOriginException.class);
+    }
+
+    @Test
+    public void preVerify_with_bad_rpIdHash_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_GET, challenge, origin, "evil.example.net", null);
+        assertThatThrownBy(() -> target.preVerify(request, parameters)).isInstanceOf(BadRpIdException.class);
+    }
+
+    @Test
+    public void preVerify_with_appid_extension_test() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.WEBAUTHN_GET, challenge, origin, "https://example.com/appid", "{\"appid\":true}");
+        assertThatCode(() -> target.preVerify(request, parameters)).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void preVerify_with_malformed_clientDataJSON_test() {
+        WebAuthnAuthenticationRequest request = new WebAuthnAuthenticationRequest(new byte[32], "{".getBytes(StandardCharsets.UTF_8),
+                createAuthenticatorData("example.com"), new byte[64], null);
+        assertThatThrownBy(() -> target.preVerify(request, parameters)).isInstanceOf(DataConversionException.class);
+    }
+
+    private WebAuthnAuthenticationRequest createRequest(ClientDataType type, Challenge challenge, Origin origin, String rpId, String clientExtensionsJSON) {
+        CollectedClientData clientData = new CollectedClientData(type, challenge, origin, null);
+        return new WebAuthnAuthenticationRequest(new byte[32], collectedClientDataConverter.convertToBytes(clientData),
+                createAuthenticatorData(rpId), new byte[64], clientExtensionsJSON);
+    }
+
+    private byte[] createAuthenticatorData(String rpId) {
+        byte[] rpIdHash = MessageDigestUtil.createSHA256().digest(rpId.getBytes(StandardCharsets.UTF_8));
+        // rpIdHash, flags and signature counter
+        return Arrays.copyOf(rpIdHash, 37);
+    }
+
+}
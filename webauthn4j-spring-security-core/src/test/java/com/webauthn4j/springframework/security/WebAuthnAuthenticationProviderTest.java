@@ -22,11 +22,18 @@ import com.webauthn4j.data.AuthenticationRequest;
 import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
 import com.webauthn4j.data.attestation.statement.AttestationStatement;
 import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.springframework.security.credential.PublicKeyCache;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
 import com.webauthn4j.springframework.security.exception.BadChallengeException;
 import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.exception.MaliciousCounterValueException;
+import com.webauthn4j.springframework.security.metrics.MicrometerWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.NoOpWebAuthnMetrics;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
+import com.webauthn4j.test.TestDataUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -43,6 +50,7 @@ import test.TestUserDetailsImpl;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 /**
@@ -113,6 +121,83 @@ public class WebAuthnAuthenticationProviderTest {
         assertThat(authenticatedToken.getAuthorities().toArray()).containsExactly(grantedAuthority);
     }
 
+    /**
+     * Verifies that an advanced counter is written conditionally.
+     */
+    @Test
+    public void authenticate_with_advanced_counter_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class, RETURNS_DEEP_STUBS);
+        when(webAuthnCredentialRecord.getCounter()).thenReturn(1L, 2L);
+        when(authenticatorService.loadCredentialRecordByCredentialId(credentialId)).thenReturn(webAuthnCredentialRecord);
+        when(authenticatorService.updateCounterIfGreater(credentialId, 2L)).thenReturn(true);
+
+        //When
+        WebAuthnAuthenticationRequest request = mock(WebAuthnAuthenticationRequest.class);
+        WebAuthnAuthenticationParameters parameters = mock(WebAuthnAuthenticationParameters.class);
+        when(request.getCredentialId()).thenReturn(credentialId);
+        when(parameters.getServerProperty()).thenReturn(mock(ServerProperty.class));
+        Authentication token = new WebAuthnAssertionAuthenticationToken(request, parameters, null);
+        authenticationProvider.authenticate(token);
+
+        //Then
+        verify(authenticatorService).updateCounterIfGreater(credentialId, 2L);
+        verify(authenticatorService, never()).updateCounter(any(), anyLong());
+    }
+
+    /**
+     * Verifies that the counter verified on the record with the cached public key is carried back to the loaded record.
+     */
+    @Test
+    public void authenticate_with_publicKeyCache_test() {
+        //Given
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 1);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        when(authenticatorService.loadCredentialRecordByCredentialId(credentialId)).thenReturn(webAuthnCredentialRecord);
+        when(authenticatorService.updateCounterIfGreater(credentialId, 2L)).thenReturn(true);
+        doAnswer(invocation -> {
+            AuthenticationParameters authenticationParameters = invocation.getArgument(1);
+            assertThat(authenticationParameters.getCredentialRecord()).isInstanceOf(WebAuthnCredentialRecordImpl.class).isNotSameAs(webAuthnCredentialRecord);
+            authenticationParameters.getCredentialRecord().setCounter(2);
+            return null;
+        }).when(webAuthnManager).verify((AuthenticationRequest) any(), any());
+        authenticationProvider.setPublicKeyCache(new PublicKeyCache());
+
+        //When
+        WebAuthnAuthenticationRequest request = mock(WebAuthnAuthenticationRequest.class);
+        WebAuthnAuthenticationParameters parameters = mock(WebAuthnAuthenticationParameters.class);
+        when(request.getCredentialId()).thenReturn(credentialId);
+        when(parameters.getServerProperty()).thenReturn(mock(ServerProperty.class));
+        Authentication token = new WebAuthnAssertionAuthenticationToken(request, parameters, null);
+        authenticationProvider.authenticate(token);
+
+        //Then
+        assertThat(webAuthnCredentialRecord.getCounter()).isEqualTo(2);
+        verify(authenticatorService).updateCounterIfGreater(credentialId, 2L);
+    }
+
+    /**
+     * Verifies that authentication fails if the counter has been advanced by a concurrent authentication.
+     */
+    @Test(expected = MaliciousCounterValueException.class)
+    public void authenticate_with_counter_advanced_concurrently_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class, RETURNS_DEEP_STUBS);
+        when(webAuthnCredentialRecord.getCounter()).thenReturn(1L, 2L);
+        when(authenticatorService.loadCredentialRecordByCredentialId(credentialId)).thenReturn(webAuthnCredentialRecord);
+        when(authenticatorService.updateCounterIfGreater(credentialId, 2L)).thenReturn(false);
+
+        //When
+        WebAuthnAuthenticationRequest request = mock(WebAuthnAuthenticationRequest.class);
+        WebAuthnAuthenticationParameters parameters = mock(WebAuthnAuthenticationParameters.class);
+        when(request.getCredentialId()).thenReturn(credentialId);
+        when(parameters.getServerProperty()).thenReturn(mock(ServerProperty.class));
+        Authentication token = new WebAuthnAssertionAuthenticationToken(request, parameters, null);
+        authenticationProvider.authenticate(token);
+    }
+
     /**
      * Verifies that validation fails if ValidationException is thrown from authenticationContextValidator
      */
@@ -138,6 +223,44 @@ public class WebAuthnAuthenticationProviderTest {
         authenticationProvider.authenticate(token);
     }
 
+    @Test
+    public void authenticate_with_preVerifier_rejection_test() {
+        WebAuthnAuthenticationPreVerifier preVerifier = mock(WebAuthnAuthenticationPreVerifier.class);
+        authenticationProvider.setPreVerifier(preVerifier);
+        WebAuthnAuthenticationRequest request = mock(WebAuthnAuthenticationRequest.class);
+        WebAuthnAuthenticationParameters parameters = mock(WebAuthnAuthenticationParameters.class);
+        doThrow(new BadChallengeException("bad challenge")).when(preVerifier).preVerify(request, parameters);
+
+        Authentication token = new WebAuthnAssertionAuthenticationToken(request, parameters, null);
+        assertThatThrownBy(() -> authenticationProvider.authenticate(token)).isInstanceOf(BadChallengeException.class);
+        verifyNoInteractions(authenticatorService, webAuthnManager);
+    }
+
+    @Test
+    public void authenticate_with_metrics_test() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        authenticationProvider.setMetrics(new MicrometerWebAuthnMetrics(meterRegistry));
+        WebAuthnAuthenticationRequest request = mock(WebAuthnAuthenticationRequest.class);
+        when(request.getCredentialId()).thenReturn(new byte[32]);
+        when(authenticatorService.loadCredentialRecordByCredentialId(any())).thenThrow(CredentialIdNotFoundException.class);
+
+        Authentication token = new WebAuthnAssertionAuthenticationToken(request, mock(WebAuthnAuthenticationParameters.class), null);
+        assertThatThrownBy(() -> authenticationProvider.authenticate(token)).isInstanceOf(BadCredentialsException.class);
+
+        assertThat(meterRegistry.get(MicrometerWebAuthnMetrics.METER_NAME)
+                .tag("operation", WebAuthnMetrics.AUTHENTICATION_RETRIEVE_CREDENTIAL_RECORD)
+                .tag("outcome", "failure")
+                .tag("exception", "BadCredentialsException")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find(MicrometerWebAuthnMetrics.METER_NAME)
+                .tag("operation", WebAuthnMetrics.AUTHENTICATION_VERIFY).timer()).isNull();
+    }
+
+    @Test
+    public void metrics_defaults_to_no_op_test() {
+        assertThat(authenticationProvider.getMetrics()).isInstanceOf(NoOpWebAuthnMetrics.class);
+        assertThatThrownBy(() -> authenticationProvider.setMetrics(null)).isInstanceOf(IllegalArgumentException.class);
+    }
 
     @Test
     public void retrieveCredentialRecord_test() {
@@ -209,6 +332,12 @@ public class WebAuthnAuthenticationProviderTest {
 
         authenticationProvider.setHideCredentialIdNotFoundExceptions(true);
         assertThat(authenticationProvider.isHideCredentialIdNotFoundExceptions()).isTrue();
+        PublicKeyCache publicKeyCache = new PublicKeyCache();
+        authenticationProvider.setPublicKeyCache(publicKeyCache);
+        assertThat(authenticationProvider.getPublicKeyCache()).isEqualTo(publicKeyCache);
+        WebAuthnAuthenticationPreVerifier preVerifier = mock(WebAuthnAuthenticationPreVerifier.class);
+        authenticationProvider.setPreVerifier(preVerifier);
+        assertThat(authenticationProvider.getPreVerifier()).isEqualTo(preVerifier);
 
 
 //        authenticationProvider.setPreAuthenticationChecks(preAuthenticationChecker);
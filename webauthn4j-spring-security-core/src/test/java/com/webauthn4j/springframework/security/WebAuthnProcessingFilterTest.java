@@ -19,6 +19,7 @@ package com.webauthn4j.springframework.security;
 import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.springframework.security.server.ServerPropertyProvider;
 import com.webauthn4j.util.Base64UrlUtil;
+import jakarta.servlet.http.HttpServletResponse;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -114,6 +115,7 @@ public class WebAuthnProcessingFilterTest {
         //Then
         WebAuthnAssertionAuthenticationToken authenticationToken = (WebAuthnAssertionAuthenticationToken) captor.getValue();
         verify(serverPropertyProvider).provide(mockHttpServletRequest);
+        assertThat(mockHttpServletRequest.getAttribute(HttpServletResponse.class.getName())).isSameAs(mockHttpServletResponse);
 
         assertThat(authenticationToken.getPrincipal()).isNull();
 
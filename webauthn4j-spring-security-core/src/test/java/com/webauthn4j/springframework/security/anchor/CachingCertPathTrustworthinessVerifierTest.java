@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.anchor;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.AttestationCertificatePath;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.test.TestAttestationUtil;
+import com.webauthn4j.verifier.attestation.trustworthiness.certpath.CertPathTrustworthinessVerifier;
+import com.webauthn4j.verifier.exception.CertificateException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class CachingCertPathTrustworthinessVerifierTest {
+
+    private final CertPathTrustworthinessVerifier delegate = mock(CertPathTrustworthinessVerifier.class);
+    private final CertificateBaseAttestationStatement attestationStatement = mock(CertificateBaseAttestationStatement.class);
+    private final AAGUID aaguid = AAGUID.NULL;
+    private Instant timestamp;
+    private final AtomicLong version = new AtomicLong();
+    private CachingCertPathTrustworthinessVerifier target;
+
+    @Before
+    public void setup() {
+        X509Certificate certificate = TestAttestationUtil.load2tierTestAuthenticatorAttestationCertificate();
+        when(attestationStatement.getX5c()).thenReturn(new AttestationCertificatePath(Collections.singletonList(certificate)));
+        timestamp = certificate.getNotBefore().toInstant().plusSeconds(1);
+        target = new CachingCertPathTrustworthinessVerifier(delegate, version::get);
+    }
+
+    @Test
+    public void verify_caches_successful_validation_test() {
+        target.verify(aaguid, attestationStatement, timestamp);
+        target.verify(aaguid, attestationStatement, timestamp);
+
+        verify(delegate, times(1)).verify(aaguid, attestationStatement, timestamp);
+        assertThat(target.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void verify_does_not_cache_failed_validation_test() {
+        doThrow(new CertificateException("untrusted")).when(delegate).verify(aaguid, attestationStatement, timestamp);
+
+        assertThatThrownBy(() -> target.verify(aaguid, attestationStatement, timestamp)).isInstanceOf(CertificateException.class);
+        assertThatThrownBy(() -> target.verify(aaguid, attestationStatement, timestamp)).isInstanceOf(CertificateException.class);
+        verify(delegate, times(2)).verify(aaguid, attestationStatement, timestamp);
+    }
+
+    @Test
+    public void verify_after_trust_anchor_reload_test() {
+        target.verify(aaguid, attestationStatement, timestamp);
+        version.incrementAndGet();
+        target.verify(aaguid, attestationStatement, timestamp);
+
+        verify(delegate, times(2)).verify(aaguid, attestationStatement, timestamp);
+    }
+
+    @Test
+    public void verify_after_trust_anchor_repository_reload_test() {
+        CertFileResourcesTrustAnchorRepository trustAnchorRepository = new CertFileResourcesTrustAnchorRepository(Collections.emptyList());
+        trustAnchorRepository.setReloadCheckInterval(null);
+        CachingCertPathTrustworthinessVerifier repositoryTarget = new CachingCertPathTrustworthinessVerifier(delegate, trustAnchorRepository);
+
+        repositoryTarget.verify(aaguid, attestationStatement, timestamp);
+        repositoryTarget.verify(aaguid, attestationStatement, timestamp);
+        trustAnchorRepository.reload();
+        repositoryTarget.verify(aaguid, attestationStatement, timestamp);
+
+        verify(delegate, times(2)).verify(aaguid, attestationStatement, timestamp);
+    }
+
+    @Test
+    public void constructor_without_trustAnchorVersionSupplier_test() {
+        assertThatThrownBy(() -> new CachingCertPathTrustworthinessVerifier(delegate, (LongSupplier) null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void verify_outside_certificate_validity_test() {
+        target.verify(aaguid, attestationStatement, timestamp);
+        Instant expired = Instant.MAX.minusSeconds(1);
+        target.verify(aaguid, attestationStatement, expired);
+
+        verify(delegate).verify(aaguid, attestationStatement, expired);
+    }
+
+}
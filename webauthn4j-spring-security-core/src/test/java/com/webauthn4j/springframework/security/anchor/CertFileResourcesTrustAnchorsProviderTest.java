@@ -17,19 +17,26 @@
 package com.webauthn4j.springframework.security.anchor;
 
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.test.TestAttestationUtil;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class CertFileResourcesTrustAnchorsProviderTest {
 
@@ -52,6 +59,50 @@ public class CertFileResourcesTrustAnchorsProviderTest {
         assertThat(trustAnchors).hasSize(1);
     }
 
+    @Test
+    public void find_parses_certificates_once_test() throws IOException {
+        byte[] bytes = new ClassPathResource("certs/3tier-test-root-CA.der").getInputStream().readAllBytes();
+        Resource resource = mock(Resource.class);
+        when(resource.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(bytes));
+        when(resource.lastModified()).thenReturn(1L);
+        CertFileResourcesTrustAnchorRepository target = new CertFileResourcesTrustAnchorRepository(Collections.singletonList(resource));
+
+        Set<TrustAnchor> trustAnchors = target.find(AAGUID.NULL);
+        assertThat(target.find(AAGUID.NULL)).isSameAs(trustAnchors);
+        assertThat(target.find(new byte[20])).isEqualTo(trustAnchors);
+        verify(resource, times(1)).getInputStream();
+    }
+
+    @Test
+    public void find_by_attestation_certificate_key_identifier_for_U2F_test() throws Exception {
+        X509Certificate attestationCertificate = TestAttestationUtil.load2tierTestAuthenticatorAttestationCertificate();
+        Resource rootCertificate = new ClassPathResource("certs/3tier-test-root-CA.der");
+        CertFileResourcesTrustAnchorRepository target = new CertFileResourcesTrustAnchorRepository();
+        target.setCertificates(Collections.singletonList(rootCertificate));
+
+        // FIDO U2F looks the trust anchors up by the key identifier of the attestation certificate, not of the anchor
+        byte[] keyIdentifier = MessageDigest.getInstance("SHA-1").digest(attestationCertificate.getPublicKey().getEncoded());
+        Set<TrustAnchor> trustAnchors = target.find(keyIdentifier);
+        assertThat(trustAnchors).isEqualTo(target.find(AAGUID.NULL)).hasSize(1);
+    }
+
+    @Test
+    public void find_reloads_modified_certificate_file_test() throws Exception {
+        File file = File.createTempFile("trust-anchor", ".der");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new ClassPathResource("certs/3tier-test-root-CA.der").getInputStream().readAllBytes());
+        CertFileResourcesTrustAnchorRepository target = new CertFileResourcesTrustAnchorRepository(Collections.singletonList(new FileSystemResource(file)));
+        target.setReloadCheckInterval(Duration.ZERO);
+        X509Certificate rootCertificate = target.find(AAGUID.NULL).iterator().next().getTrustedCert();
+
+        X509Certificate certificate = TestAttestationUtil.load2tierTestAuthenticatorAttestationCertificate();
+        Files.write(file.toPath(), certificate.getEncoded());
+        assertThat(file.setLastModified(file.lastModified() + 10000)).isTrue();
+
+        assertThat(target.find(AAGUID.NULL)).extracting(TrustAnchor::getTrustedCert).doesNotContain(rootCertificate);
+        assertThat(target.find(new byte[20])).extracting(TrustAnchor::getTrustedCert).containsExactly(certificate);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void afterPropertiesSet_test() {
         CertFileResourcesTrustAnchorRepository target = new CertFileResourcesTrustAnchorRepository();
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.springframework.security.credential.BloomFilterWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.InMemoryWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.userdetails.User;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class BloomFilterWebAuthnCredentialRecordManagerTest {
+
+    private final InMemoryWebAuthnCredentialRecordManager delegate = spy(new InMemoryWebAuthnCredentialRecordManager());
+    private final BloomFilterWebAuthnCredentialRecordManager target = new BloomFilterWebAuthnCredentialRecordManager(delegate, 1000, 0.001);
+
+    @Before
+    public void setup() {
+        target.setFastRejectEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_with_unknown_credentialId_test() {
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x01}));
+        target.afterPropertiesSet();
+
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x01})).isNotNull();
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(new byte[]{0x02})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(target.credentialRecordExists(new byte[]{0x02})).isFalse();
+        verify(delegate, never()).loadCredentialRecordByCredentialId(new byte[]{0x02});
+        verify(delegate, never()).credentialRecordExists(new byte[]{0x02});
+        assertThat(target.getRejectedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void createCredentialRecord_test() {
+        target.afterPropertiesSet();
+        target.createCredentialRecord(createCredentialRecord(new byte[]{0x03}));
+
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x03})).isNotNull();
+        assertThat(target.credentialRecordExists(new byte[]{0x03})).isTrue();
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_before_rebuild_test() {
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x04}));
+
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x04})).isNotNull();
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(new byte[]{0x05})).isInstanceOf(CredentialIdNotFoundException.class);
+        verify(delegate).loadCredentialRecordByCredentialId(new byte[]{0x05});
+    }
+
+    @Test
+    public void rebuild_after_external_creation_test() {
+        target.afterPropertiesSet();
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x06}));
+        target.rebuild();
+
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x06})).isNotNull();
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_registered_through_delegate_with_stale_filter_test() {
+        Instant now = Instant.parse("2024-01-01T00:00:00Z");
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        target.setRebuildInterval(null);
+        target.afterPropertiesSet();
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x07}));
+
+        target.setClock(Clock.fixed(now.plus(target.getMaximumFilterAge()).plusSeconds(1), ZoneOffset.UTC));
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x07})).isNotNull();
+        assertThat(target.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_registered_through_delegate_after_scheduled_rebuild_test() throws InterruptedException {
+        target.setRebuildInterval(Duration.ofMillis(20));
+        target.afterPropertiesSet();
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x08}));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        WebAuthnCredentialRecord webAuthnCredentialRecord = null;
+        while (webAuthnCredentialRecord == null && System.nanoTime() < deadline) {
+            try {
+                webAuthnCredentialRecord = target.loadCredentialRecordByCredentialId(new byte[]{0x08});
+            } catch (CredentialIdNotFoundException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertThat(webAuthnCredentialRecord).isNotNull();
+    }
+
+    @Test
+    public void fast_reject_is_disabled_by_default_test() {
+        BloomFilterWebAuthnCredentialRecordManager defaultTarget = new BloomFilterWebAuthnCredentialRecordManager(delegate);
+        defaultTarget.afterPropertiesSet();
+        delegate.createCredentialRecord(createCredentialRecord(new byte[]{0x09}));
+
+        assertThat(defaultTarget.isFastRejectEnabled()).isFalse();
+        assertThat(defaultTarget.loadCredentialRecordByCredentialId(new byte[]{0x09})).isNotNull();
+        assertThatThrownBy(() -> defaultTarget.loadCredentialRecordByCredentialId(new byte[]{0x0a})).isInstanceOf(CredentialIdNotFoundException.class);
+        verify(delegate).loadCredentialRecordByCredentialId(new byte[]{0x0a});
+        verify(delegate, never()).forEachCredentialId(any());
+        assertThat(defaultTarget.getRejectedCount()).isZero();
+        defaultTarget.destroy();
+    }
+
+    private WebAuthnCredentialRecord createCredentialRecord(byte[] credentialId) {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, credentialId, TestDataUtil.createEC2COSEPublicKey());
+        return new WebAuthnCredentialRecordImpl("authenticator", new User("user", "password", Collections.emptyList()), attestedCredentialData,
+                TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+    }
+
+}
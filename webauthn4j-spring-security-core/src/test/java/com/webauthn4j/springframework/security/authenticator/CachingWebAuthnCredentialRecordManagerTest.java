@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.springframework.security.credential.CachingWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.InMemoryWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingWebAuthnCredentialRecordManagerTest {
+
+    private final CachingWebAuthnCredentialRecordManager target = new CachingWebAuthnCredentialRecordManager(new InMemoryWebAuthnCredentialRecordManager());
+
+    private final WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(new byte[]{0x01});
+    private final WebAuthnCredentialRecord anotherCredentialRecord = createCredentialRecord(new byte[]{0x02});
+
+    @Test
+    public void createCredentialRecord_evicts_user_principal_entry_test() {
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).hasSize(1);
+
+        target.createCredentialRecord(anotherCredentialRecord);
+
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).hasSize(2);
+        assertThat(target.loadCredentialDescriptorsByUserPrincipal("user")).hasSize(2);
+    }
+
+    @Test
+    public void deleteCredentialRecord_evicts_credentialId_and_user_principal_entries_test() {
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        target.createCredentialRecord(anotherCredentialRecord);
+        assertThat(target.loadCredentialRecordByCredentialId(new byte[]{0x01})).isNotNull();
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).hasSize(2);
+
+        target.deleteCredentialRecord(new byte[]{0x01});
+
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).hasSize(1);
+        assertThat(target.credentialRecordExists(new byte[]{0x01})).isFalse();
+    }
+
+    private static WebAuthnCredentialRecord createCredentialRecord(byte[] credentialId) {
+        AttestedCredentialData attestedCredentialData = TestDataUtil.createAttestedCredentialData();
+        return new WebAuthnCredentialRecordImpl("authenticator", "user",
+                new AttestedCredentialData(attestedCredentialData.getAaguid(), credentialId, attestedCredentialData.getCOSEKey()),
+                TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.springframework.security.credential.CachingWebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class CachingWebAuthnCredentialRecordServiceTest {
+
+    private final WebAuthnCredentialRecordService delegate = mock(WebAuthnCredentialRecordService.class);
+    private final CachingWebAuthnCredentialRecordService target = new CachingWebAuthnCredentialRecordService(delegate);
+
+    private final WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+    private final byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+
+    @Test
+    public void loadCredentialRecordByCredentialId_is_cached_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId)).isEqualTo(webAuthnCredentialRecord);
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId.clone())).isEqualTo(webAuthnCredentialRecord);
+
+        verify(delegate, times(1)).loadCredentialRecordByCredentialId(any());
+        assertThat(target.getCredentialIdCacheStatistics().getHitCount()).isEqualTo(1);
+        assertThat(target.getCredentialIdCacheStatistics().getMissCount()).isEqualTo(1);
+        assertThat(target.getCredentialIdCacheStatistics().getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_returns_copy_of_cached_record_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+
+        WebAuthnCredentialRecord first = target.loadCredentialRecordByCredentialId(credentialId);
+        // verification advances the counter of the record it is given
+        first.setCounter(5);
+        WebAuthnCredentialRecord second = target.loadCredentialRecordByCredentialId(credentialId);
+
+        assertThat(second).isNotSameAs(first).isNotSameAs(webAuthnCredentialRecord);
+        assertThat(second.getCounter()).isZero();
+    }
+
+    @Test
+    public void load_concurrent_with_counter_update_is_not_cached_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            // the counter is updated after the delegate has read the record
+            WebAuthnCredentialRecord stale = new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+            target.updateCounter(credentialId, 5);
+            return stale;
+        }).thenReturn(new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 5));
+
+        target.loadCredentialRecordByCredentialId(credentialId);
+
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(5);
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void loadCredentialRecordsByUserPrincipal_returns_copies_of_cached_records_test() {
+        when(delegate.loadCredentialRecordsByUserPrincipal("user")).thenReturn(Collections.singletonList(webAuthnCredentialRecord));
+
+        target.loadCredentialRecordsByUserPrincipal("user").get(0).setCounter(5);
+
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user").get(0).getCounter()).isZero();
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user").get(0)).isNotSameAs(webAuthnCredentialRecord);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_not_found_is_not_cached_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenThrow(new CredentialIdNotFoundException("not found"));
+
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(credentialId)).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(credentialId)).isInstanceOf(CredentialIdNotFoundException.class);
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void loadCredentialRecordsByUserPrincipal_is_cached_test() {
+        List<WebAuthnCredentialRecord> records = Collections.singletonList(webAuthnCredentialRecord);
+        when(delegate.loadCredentialRecordsByUserPrincipal("user")).thenReturn(records);
+
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).isEqualTo(records);
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).isEqualTo(records);
+        verify(delegate, times(1)).loadCredentialRecordsByUserPrincipal("user");
+
+        target.evictCredentialRecordsByUserPrincipal("user");
+        target.loadCredentialRecordsByUserPrincipal("user");
+        verify(delegate, times(2)).loadCredentialRecordsByUserPrincipal("user");
+    }
+
+    @Test
+    public void loadCredentialDescriptorsByUserPrincipal_uses_cached_records_test() {
+        List<WebAuthnCredentialRecord> records = Collections.singletonList(webAuthnCredentialRecord);
+        when(delegate.loadCredentialRecordsByUserPrincipal("user")).thenReturn(records);
+        PublicKeyCredentialDescriptor descriptor = new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, credentialId, null);
+        when(delegate.loadCredentialDescriptorsByUserPrincipal("user")).thenReturn(Collections.singletonList(descriptor));
+
+        assertThat(target.loadCredentialDescriptorsByUserPrincipal("user")).containsExactly(descriptor);
+        verify(delegate, times(1)).loadCredentialDescriptorsByUserPrincipal("user");
+
+        target.loadCredentialRecordsByUserPrincipal("user");
+        assertThat(target.loadCredentialDescriptorsByUserPrincipal("user")).containsExactly(descriptor);
+        verify(delegate, times(1)).loadCredentialDescriptorsByUserPrincipal("user");
+    }
+
+    @Test
+    public void updateCounter_writes_through_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+        target.loadCredentialRecordByCredentialId(credentialId);
+
+        target.updateCounter(credentialId, 10);
+
+        verify(delegate).updateCounter(credentialId, 10);
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(10);
+        verify(delegate, times(1)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void updateCounter_failure_evicts_cached_record_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+        doThrow(new CredentialIdNotFoundException("not found")).when(delegate).updateCounter(any(), anyLong());
+        target.loadCredentialRecordByCredentialId(credentialId);
+
+        assertThatThrownBy(() -> target.updateCounter(credentialId, 10)).isInstanceOf(CredentialIdNotFoundException.class);
+        target.loadCredentialRecordByCredentialId(credentialId);
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void updateCounterIfGreater_rejected_evicts_cached_record_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+        when(delegate.updateCounterIfGreater(any(), anyLong())).thenReturn(false);
+        target.loadCredentialRecordByCredentialId(credentialId);
+
+        assertThat(target.updateCounterIfGreater(credentialId, 10)).isFalse();
+        target.loadCredentialRecordByCredentialId(credentialId);
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void evictCredentialRecord_test() {
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+        target.loadCredentialRecordByCredentialId(credentialId);
+        target.evictCredentialRecord(credentialId);
+        target.loadCredentialRecordByCredentialId(credentialId);
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+    }
+}
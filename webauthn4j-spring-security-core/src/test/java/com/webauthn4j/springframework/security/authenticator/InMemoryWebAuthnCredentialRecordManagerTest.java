@@ -16,6 +16,8 @@
 
 package com.webauthn4j.springframework.security.authenticator;
 
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
 import com.webauthn4j.springframework.security.credential.InMemoryWebAuthnCredentialRecordManager;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
 import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
@@ -26,7 +28,12 @@ import org.junit.Test;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -46,6 +53,55 @@ public class InMemoryWebAuthnCredentialRecordManagerTest {
         assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(1);
     }
 
+    @Test
+    public void updateCounterIfGreater_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        assertThat(target.updateCounterIfGreater(credentialId, 1)).isTrue();
+        assertThat(target.updateCounterIfGreater(credentialId, 1)).isFalse();
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateCounterIfGreater_after_in_place_counter_change_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        // verification advances the counter of the loaded record in place
+        target.loadCredentialRecordByCredentialId(credentialId).setCounter(1);
+        assertThat(target.updateCounterIfGreater(credentialId, 1)).isTrue();
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_returns_independent_copy_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        WebAuthnCredentialRecord first = target.loadCredentialRecordByCredentialId(credentialId);
+        WebAuthnCredentialRecord second = target.loadCredentialRecordByCredentialId(credentialId);
+        assertThat(first).isNotSameAs(second).isNotSameAs(webAuthnCredentialRecord);
+
+        assertThat(target.updateCounterIfGreater(credentialId, 5)).isTrue();
+        // a reader holding a stale copy must not roll back the stored counter
+        first.setCounter(1);
+        webAuthnCredentialRecord.setCounter(1);
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(5);
+        assertThat(target.loadCredentialRecordsByUserPrincipal(userDetails).get(0).getCounter()).isEqualTo(5);
+    }
+
+    @Test
+    public void updateCounterIfGreater_with_non_existing_id_test(){
+        byte[] nonExistingCredentialId = new byte[]{ 0x01, 0x23};
+        assertThatThrownBy(()->target.updateCounterIfGreater(nonExistingCredentialId, 1)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
     @Test
     public void createCredentialRecord_loadCredentialRecordByCredentialId_test(){
         String authenticatorName = "authenticator";
@@ -106,4 +162,111 @@ public class InMemoryWebAuthnCredentialRecordManagerTest {
         assertThat(target.credentialRecordExists(credentialId)).isTrue();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void loadCredentialRecordByCredentialId_with_copied_credentialId_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId().clone();
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId)).isEqualTo(webAuthnCredentialRecord);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_with_non_existing_id_test(){
+        byte[] nonExistingCredentialId = new byte[]{ 0x01, 0x23};
+        assertThatThrownBy(()->target.loadCredentialRecordByCredentialId(nonExistingCredentialId)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void deleteCredentialRecord_removes_principal_index_entry_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        target.deleteCredentialRecord(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId());
+        assertThatThrownBy(()-> target.loadCredentialRecordsByUserPrincipal(userDetails)).isInstanceOf(PrincipalNotFoundException.class);
+    }
+
+    @Test
+    public void createCredentialRecord_with_same_credentialId_for_another_principal_test(){
+        String authenticatorName = "authenticator";
+        UserDetails userA = new User("userA", "password", Collections.emptyList());
+        UserDetails userB = new User("userB", "password", Collections.emptyList());
+        WebAuthnCredentialRecord recordA = new WebAuthnCredentialRecordImpl(authenticatorName, userA, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        WebAuthnCredentialRecord recordB = new WebAuthnCredentialRecordImpl(authenticatorName, userB, recordA.getAttestedCredentialData(), recordA.getAttestationStatement(), 0);
+        target.createCredentialRecord(recordA);
+        target.createCredentialRecord(recordB);
+        byte[] credentialId = recordA.getAttestedCredentialData().getCredentialId();
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId)).isEqualTo(recordB);
+        assertThat(target.loadCredentialRecordsByUserPrincipal(userB)).containsExactly(recordB);
+        assertThatThrownBy(()-> target.loadCredentialRecordsByUserPrincipal(userA)).isInstanceOf(PrincipalNotFoundException.class);
+    }
+
+    @Test
+    public void createCredentialRecord_and_deleteCredentialRecord_concurrently_keep_indexes_consistent_test() throws Exception {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 200; i++) {
+                target.createCredentialRecord(webAuthnCredentialRecord);
+                Future<?> create = executorService.submit(() -> target.createCredentialRecord(webAuthnCredentialRecord));
+                Future<?> delete = executorService.submit(() -> target.deleteCredentialRecord(credentialId));
+                create.get();
+                delete.get();
+                if (target.credentialRecordExists(credentialId)) {
+                    assertThat(target.loadCredentialRecordsByUserPrincipal(userDetails)).hasSize(1);
+                    target.deleteCredentialRecord(credentialId);
+                }
+                assertThatThrownBy(() -> target.loadCredentialRecordsByUserPrincipal(userDetails)).isInstanceOf(PrincipalNotFoundException.class);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void createCredentialRecord_with_null_principal_test(){
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", null, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+        assertThatThrownBy(() -> target.createCredentialRecord(webAuthnCredentialRecord))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("userPrincipal");
+        assertThat(target.credentialRecordExists(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId())).isFalse();
+    }
+
+    @Test
+    public void loadCredentialRecordsByUserPrincipal_with_null_principal_test(){
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        target.createCredentialRecord(new WebAuthnCredentialRecordImpl("authenticator", userDetails, TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0));
+        assertThatThrownBy(() -> target.loadCredentialRecordsByUserPrincipal(null)).isInstanceOf(PrincipalNotFoundException.class);
+    }
+
+    @Test
+    public void createCredentialRecord_concurrently_test() throws Exception {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        int count = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String authenticatorName = "authenticator" + i;
+                byte[] id = new byte[]{(byte) (i >> 8), (byte) i};
+                futures.add(executorService.submit(() -> {
+                    AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, id, TestDataUtil.createAttestedCredentialData().getCOSEKey());
+                    WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl(authenticatorName, userDetails, attestedCredentialData, TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+                    target.createCredentialRecord(webAuthnCredentialRecord);
+                    return webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                assertThat(target.credentialRecordExists(future.get())).isTrue();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertThat(target.loadCredentialRecordsByUserPrincipal(userDetails)).hasSize(count);
+    }
+
+}
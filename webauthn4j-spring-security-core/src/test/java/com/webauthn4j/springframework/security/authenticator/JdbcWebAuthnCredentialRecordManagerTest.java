@@ -0,0 +1,206 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.springframework.security.credential.JdbcWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.springframework.security.exception.PrincipalNotFoundException;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JdbcWebAuthnCredentialRecordManagerTest {
+
+    private final ObjectConverter objectConverter = new ObjectConverter();
+
+    private EmbeddedDatabase database;
+    private JdbcWebAuthnCredentialRecordManager target;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript(JdbcWebAuthnCredentialRecordManager.DEFAULT_SCHEMA_LOCATION)
+                .build();
+        target = new JdbcWebAuthnCredentialRecordManager(new JdbcTemplate(database), objectConverter);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void createCredentialRecord_loadCredentialRecordByCredentialId_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+
+        WebAuthnCredentialRecord loaded = target.loadCredentialRecordByCredentialId(credentialId);
+        assertThat(loaded.getAttestedCredentialData()).isEqualTo(webAuthnCredentialRecord.getAttestedCredentialData());
+        assertThat(loaded.getAttestationStatement()).isEqualTo(webAuthnCredentialRecord.getAttestationStatement());
+        assertThat(loaded.getClientData()).isEqualTo(webAuthnCredentialRecord.getClientData());
+        assertThat(loaded.getTransports()).isEqualTo(webAuthnCredentialRecord.getTransports());
+        assertThat(loaded.getCounter()).isEqualTo(webAuthnCredentialRecord.getCounter());
+        assertThat(loaded.isUvInitialized()).isTrue();
+        assertThat(loaded.isBackupEligible()).isFalse();
+        assertThat(loaded.isBackedUp()).isFalse();
+        assertThat(((WebAuthnCredentialRecordImpl) loaded).getName()).isEqualTo("authenticator");
+        assertThat(loaded.getUserPrincipal()).isEqualTo("user");
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_with_userDetailsService_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername("user")).thenReturn(userDetails);
+        target.setUserDetailsService(userDetailsService);
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+
+        WebAuthnCredentialRecord loaded = target.loadCredentialRecordByCredentialId(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId());
+        assertThat(loaded.getUserPrincipal()).isEqualTo(userDetails);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_with_non_existing_id_test() {
+        byte[] nonExistingCredentialId = new byte[]{0x01, 0x23};
+        assertThatThrownBy(() -> target.loadCredentialRecordByCredentialId(nonExistingCredentialId)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void updateCounter_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        target.updateCounter(credentialId, 1);
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateCounter_with_non_existing_id_test() {
+        byte[] nonExistingCredentialId = new byte[]{0x01, 0x23};
+        assertThatThrownBy(() -> target.updateCounter(nonExistingCredentialId, 1)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void updateCounterIfGreater_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        assertThat(target.updateCounterIfGreater(credentialId, 2)).isTrue();
+        assertThat(target.updateCounterIfGreater(credentialId, 2)).isFalse();
+        assertThat(target.updateCounterIfGreater(credentialId, 1)).isFalse();
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(2);
+    }
+
+    @Test
+    public void updateCounterIfGreater_with_non_existing_id_test() {
+        byte[] nonExistingCredentialId = new byte[]{0x01, 0x23};
+        assertThatThrownBy(() -> target.updateCounterIfGreater(nonExistingCredentialId, 1)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void loadCredentialRecordsByUserPrincipal_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        assertThat(target.loadCredentialRecordsByUserPrincipal("user")).hasSize(1);
+        assertThat(target.loadCredentialRecordsByUserPrincipal(userDetails)).hasSize(1);
+    }
+
+    @Test
+    public void loadCredentialRecordsByUserPrincipal_with_non_existing_userPrincipal_test() {
+        assertThatThrownBy(() -> target.loadCredentialRecordsByUserPrincipal("nonExistingUser")).isInstanceOf(PrincipalNotFoundException.class);
+    }
+
+    @Test
+    public void loadCredentialDescriptorsByUserPrincipal_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        assertThat(target.loadCredentialDescriptorsByUserPrincipal(userDetails)).containsExactly(
+                new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId(), webAuthnCredentialRecord.getTransports()));
+    }
+
+    @Test
+    public void loadCredentialDescriptorsByUserPrincipal_with_non_existing_userPrincipal_test() {
+        assertThatThrownBy(() -> target.loadCredentialDescriptorsByUserPrincipal("nonExistingUser")).isInstanceOf(PrincipalNotFoundException.class);
+    }
+
+    @Test
+    public void deleteCredentialRecord_test() {
+        UserDetails userDetails = new User("user", "password", Collections.emptyList());
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(userDetails);
+        target.createCredentialRecord(webAuthnCredentialRecord);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        assertThat(target.credentialRecordExists(credentialId)).isTrue();
+        target.deleteCredentialRecord(credentialId);
+        assertThat(target.credentialRecordExists(credentialId)).isFalse();
+    }
+
+    @Test
+    public void deleteCredentialRecord_with_non_existing_id_test() {
+        byte[] nonExistingCredentialId = new byte[]{0x01, 0x23};
+        assertThatThrownBy(() -> target.deleteCredentialRecord(nonExistingCredentialId)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    private WebAuthnCredentialRecord createCredentialRecord(UserDetails userDetails) {
+        return new WebAuthnCredentialRecordImpl(
+                "authenticator",
+                (User) userDetails,
+                TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(),
+                true,
+                false,
+                false,
+                0,
+                TestDataUtil.createAttestedCredentialData(),
+                null,
+                TestDataUtil.createClientData(ClientDataType.WEBAUTHN_CREATE),
+                null,
+                new HashSet<>(Arrays.asList(AuthenticatorTransport.USB, AuthenticatorTransport.NFC))
+        );
+    }
+}
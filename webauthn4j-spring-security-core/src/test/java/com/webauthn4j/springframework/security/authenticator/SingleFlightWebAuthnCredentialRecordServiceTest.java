@@ -0,0 +1,179 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.springframework.security.credential.SingleFlightWebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.exception.CredentialIdNotFoundException;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SingleFlightWebAuthnCredentialRecordServiceTest {
+
+    private static final int CALLERS = 8;
+
+    private final WebAuthnCredentialRecordService delegate = mock(WebAuthnCredentialRecordService.class);
+    private final SingleFlightWebAuthnCredentialRecordService target = new SingleFlightWebAuthnCredentialRecordService(delegate);
+
+    @Test
+    public void loadCredentialRecordByCredentialId_coalesces_concurrent_lookups_test() throws Exception {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            release.await();
+            return webAuthnCredentialRecord;
+        });
+
+        List<Future<WebAuthnCredentialRecord>> results = lookupConcurrently(release);
+
+        for (Future<WebAuthnCredentialRecord> result : results) {
+            assertThat(result.get()).isSameAs(webAuthnCredentialRecord);
+        }
+        verify(delegate, times(1)).loadCredentialRecordByCredentialId(any());
+        assertThat(target.getDelegateCallCount()).isEqualTo(1);
+        assertThat(target.getCoalescedCallCount()).isEqualTo(CALLERS - 1);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_propagates_exception_to_all_callers_test() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            release.await();
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        });
+
+        List<Future<WebAuthnCredentialRecord>> results = lookupConcurrently(release);
+
+        for (Future<WebAuthnCredentialRecord> result : results) {
+            assertThatThrownBy(result::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(CredentialIdNotFoundException.class);
+        }
+        verify(delegate, times(1)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_gives_each_caller_its_own_instance_test() throws Exception {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            release.await();
+            return webAuthnCredentialRecord;
+        });
+
+        List<Future<WebAuthnCredentialRecord>> results = lookupConcurrently(release);
+
+        Set<WebAuthnCredentialRecord> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<WebAuthnCredentialRecord> result : results) {
+            WebAuthnCredentialRecord record = result.get();
+            assertThat(record.getCounter()).isEqualTo(1);
+            assertThat(record.getAttestedCredentialData()).isEqualTo(webAuthnCredentialRecord.getAttestedCredentialData());
+            instances.add(record);
+        }
+        assertThat(instances).hasSize(CALLERS);
+        verify(delegate, times(1)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_gives_each_caller_its_own_exception_test() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            release.await();
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        });
+
+        List<Future<WebAuthnCredentialRecord>> results = lookupConcurrently(release);
+
+        Set<Throwable> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<WebAuthnCredentialRecord> result : results) {
+            assertThatThrownBy(result::get).isInstanceOf(ExecutionException.class)
+                    .satisfies(e -> instances.add(e.getCause()));
+        }
+        assertThat(instances).hasSize(CALLERS);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_waiters_retry_on_other_failure_test() throws Exception {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenAnswer(invocation -> {
+            release.await();
+            throw new IllegalStateException("database unavailable");
+        }).thenReturn(webAuthnCredentialRecord);
+
+        List<Future<WebAuthnCredentialRecord>> results = lookupConcurrently(release);
+
+        int failures = 0;
+        for (Future<WebAuthnCredentialRecord> result : results) {
+            try {
+                assertThat(result.get()).isSameAs(webAuthnCredentialRecord);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+                failures++;
+            }
+        }
+        assertThat(failures).isEqualTo(1);
+        verify(delegate, times(CALLERS)).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_sequential_lookups_are_not_coalesced_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class);
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+
+        target.loadCredentialRecordByCredentialId(new byte[]{0x01});
+        target.loadCredentialRecordByCredentialId(new byte[]{0x01});
+
+        verify(delegate, times(2)).loadCredentialRecordByCredentialId(any());
+        assertThat(target.getCoalescedCallCount()).isZero();
+    }
+
+    private List<Future<WebAuthnCredentialRecord>> lookupConcurrently(CountDownLatch release) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<WebAuthnCredentialRecord>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executorService.submit(() -> target.loadCredentialRecordByCredentialId(new byte[]{0x01})));
+            }
+            // the delegate call is held until every other caller has joined it
+            while (target.getCoalescedCallCount() < CALLERS - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            return results;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.authenticator;
+
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecord;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordImpl;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.credential.WriteBehindCounterWebAuthnCredentialRecordService;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindCounterWebAuthnCredentialRecordServiceTest {
+
+    private final WebAuthnCredentialRecordService delegate = mock(WebAuthnCredentialRecordService.class);
+    private final WriteBehindCounterWebAuthnCredentialRecordService target = new WriteBehindCounterWebAuthnCredentialRecordService(delegate, 2, Duration.ofHours(1));
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void updateCounter_merges_pending_updates_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        target.updateCounter(credentialId, 5);
+        target.updateCounter(credentialId, 3);
+        target.updateCounter(credentialId.clone(), 4);
+
+        verify(delegate, never()).updateCounterIfGreater(any(), anyLong());
+        assertThat(target.getPendingCount()).isEqualTo(1);
+
+        target.flush();
+        verify(delegate, times(1)).updateCounterIfGreater(credentialId, 5);
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void updateCounter_drops_zero_counter_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        for (int i = 0; i < 3; i++) {
+            target.updateCounter(credentialId, 0);
+        }
+
+        assertThat(target.getPendingCount()).isZero();
+        target.flush();
+        verify(delegate, never()).updateCounterIfGreater(any(), anyLong());
+        verify(delegate, never()).loadCredentialRecordByCredentialId(any());
+    }
+
+    @Test
+    public void updateCounter_drops_counter_already_written_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        when(delegate.updateCounterIfGreater(any(), anyLong())).thenReturn(true);
+        target.updateCounter(credentialId, 5);
+        target.flush();
+
+        target.updateCounter(credentialId, 5);
+
+        assertThat(target.getPendingCount()).isZero();
+        verify(delegate, times(1)).updateCounterIfGreater(credentialId, 5);
+    }
+
+    @Test
+    public void updateCounter_triggers_flush_on_batch_size_test() {
+        target.updateCounter(new byte[]{0x01}, 1);
+        target.updateCounter(new byte[]{0x02}, 2);
+
+        verify(delegate, timeout(5000)).updateCounterIfGreater(new byte[]{0x01}, 1);
+        verify(delegate, timeout(5000)).updateCounterIfGreater(new byte[]{0x02}, 2);
+    }
+
+    @Test
+    public void loadCredentialRecordByCredentialId_reflects_pending_counter_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = new WebAuthnCredentialRecordImpl("authenticator", "user", TestDataUtil.createAttestedCredentialData(), TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 1);
+        byte[] credentialId = webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId();
+        when(delegate.loadCredentialRecordByCredentialId(any())).thenReturn(webAuthnCredentialRecord);
+
+        target.updateCounter(credentialId, 10);
+
+        assertThat(target.loadCredentialRecordByCredentialId(credentialId).getCounter()).isEqualTo(10);
+    }
+
+    @Test
+    public void flush_retries_failed_updates_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        doThrow(new IllegalStateException("unavailable")).doReturn(true).when(delegate).updateCounterIfGreater(any(), anyLong());
+        target.updateCounter(credentialId, 5);
+
+        try {
+            target.flush();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertThat(target.getPendingCount()).isEqualTo(1);
+
+        target.flush();
+        verify(delegate, times(2)).updateCounterIfGreater(eq(credentialId), eq(5L));
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void updateCounterIfGreater_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        assertThat(target.updateCounterIfGreater(credentialId, 5)).isTrue();
+        assertThat(target.updateCounterIfGreater(credentialId, 5)).isFalse();
+        assertThat(target.updateCounterIfGreater(credentialId, 4)).isFalse();
+        assertThat(target.updateCounterIfGreater(credentialId, 6)).isTrue();
+
+        target.flush();
+        verify(delegate, times(1)).updateCounterIfGreater(credentialId, 6);
+    }
+
+    @Test
+    public void updateCounterIfGreater_rejects_counter_in_flight_and_written_test() throws Exception {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.updateCounterIfGreater(any(), anyLong())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        assertThat(target.updateCounterIfGreater(credentialId, 5)).isTrue();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> flush = executor.submit(target::flush);
+            assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(target.updateCounterIfGreater(credentialId, 5)).isFalse();
+            release.countDown();
+            flush.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(target.updateCounterIfGreater(credentialId, 5)).isFalse();
+        assertThat(target.updateCounterIfGreater(credentialId, 6)).isTrue();
+    }
+
+    @Test
+    public void updateCounterIfGreater_concurrent_with_flush_test() throws Exception {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        when(delegate.updateCounterIfGreater(any(), anyLong())).thenReturn(true);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            for (long counter = 1; counter <= 50; counter++) {
+                long presented = counter;
+                CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(() -> {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        return target.updateCounterIfGreater(credentialId, presented);
+                    }));
+                }
+                Future<?> flush = executor.submit(() -> {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    target.flush();
+                    return null;
+                });
+                int accepted = 0;
+                for (Future<Boolean> result : results) {
+                    if (result.get(5, TimeUnit.SECONDS)) {
+                        accepted++;
+                    }
+                }
+                flush.get(5, TimeUnit.SECONDS);
+                assertThat(accepted).as("counter %d", presented).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void flush_continues_past_failed_update_test() {
+        byte[] failing = new byte[]{0x01};
+        byte[] succeeding = new byte[]{0x02};
+        when(delegate.updateCounterIfGreater(failing, 5)).thenThrow(new IllegalStateException("unavailable"));
+        when(delegate.updateCounterIfGreater(succeeding, 5)).thenReturn(true);
+        WriteBehindCounterWebAuthnCredentialRecordService service = new WriteBehindCounterWebAuthnCredentialRecordService(delegate, 10, Duration.ofHours(1));
+        try {
+            service.updateCounter(failing, 5);
+            service.updateCounter(succeeding, 5);
+
+            assertThatThrownBy(service::flush).isInstanceOf(IllegalStateException.class);
+            verify(delegate).updateCounterIfGreater(succeeding, 5);
+            assertThat(service.getPendingCount()).isEqualTo(1);
+        } finally {
+            reset(delegate);
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void destroy_drains_pending_updates_test() {
+        byte[] credentialId = new byte[]{0x01, 0x23};
+        target.updateCounter(credentialId, 5);
+
+        target.destroy();
+
+        verify(delegate).updateCounterIfGreater(credentialId, 5);
+        target.updateCounter(credentialId, 6);
+        verify(delegate).updateCounter(credentialId, 6);
+    }
+}
@@ -107,6 +107,28 @@ public class HttpSessionChallengeRepositoryTest {
         assertThat(loadedChallenge).isNull();
     }
 
+    @Test
+    public void loadAndRemoveChallenge_test() {
+        MockHttpSession session = new MockHttpSession();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(target.loadAndRemoveChallenge(request)).isEqualTo(challenge);
+        assertThat(target.loadAndRemoveChallenge(request)).isNull();
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadAndRemoveChallenge_test_without_previous_request() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThat(target.loadAndRemoveChallenge(request)).isNull();
+        assertThat(request.getSession(false)).isNull();
+    }
+
     @Test
     public void loadOrGenerateChallenge_test_without_previous_request() {
         MockHttpServletRequest request = new MockHttpServletRequest();
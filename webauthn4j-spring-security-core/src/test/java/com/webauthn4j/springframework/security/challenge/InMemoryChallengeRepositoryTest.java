@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for InMemoryChallengeRepository
+ */
+public class InMemoryChallengeRepositoryTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+    private final InMemoryChallengeRepository target = createTarget(100, Duration.ofMinutes(5));
+
+    @Test
+    public void saveChallenge_writes_cookie_and_header_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = createOptionsRequest(response);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        Cookie cookie = response.getCookie(InMemoryChallengeRepository.DEFAULT_COOKIE_NAME);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(response.getHeader(InMemoryChallengeRepository.DEFAULT_HEADER_NAME)).isEqualTo(cookie.getValue());
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_from_cookie_and_header_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        MockHttpServletRequest cookieRequest = new MockHttpServletRequest();
+        cookieRequest.setCookies(response.getCookie(InMemoryChallengeRepository.DEFAULT_COOKIE_NAME));
+        MockHttpServletRequest headerRequest = new MockHttpServletRequest();
+        headerRequest.addHeader(InMemoryChallengeRepository.DEFAULT_HEADER_NAME, response.getHeader(InMemoryChallengeRepository.DEFAULT_HEADER_NAME));
+
+        assertThat(target.loadChallenge(cookieRequest)).isEqualTo(challenge);
+        assertThat(target.loadChallenge(headerRequest)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadAndRemoveChallenge_is_single_use_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        assertThat(target.loadAndRemoveChallenge(createRequest(response))).isEqualTo(challenge);
+        assertThat(target.loadAndRemoveChallenge(createRequest(response))).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void loadAndRemoveChallenge_concurrently_test() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Challenge>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> target.loadAndRemoveChallenge(createRequest(response)));
+            }
+            int obtained = 0;
+            for (Future<Challenge> future : executorService.invokeAll(tasks)) {
+                if (future.get() != null) {
+                    obtained++;
+                }
+            }
+            assertThat(obtained).isEqualTo(1);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void loadChallenge_with_expired_challenge_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        clock.advance(Duration.ofMinutes(5));
+
+        assertThat(target.loadChallenge(createRequest(response))).isNull();
+    }
+
+    @Test
+    public void expired_challenges_are_swept_test() {
+        for (int i = 0; i < 10; i++) {
+            target.loadOrGenerateChallenge(createOptionsRequest(new MockHttpServletResponse()));
+            clock.advance(Duration.ofSeconds(10));
+        }
+        assertThat(target.size()).isEqualTo(10);
+
+        clock.advance(Duration.ofMinutes(5));
+        target.saveChallenge(null, new MockHttpServletRequest());
+
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void size_is_bounded_test() {
+        InMemoryChallengeRepository bounded = createTarget(10, Duration.ofMinutes(5));
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        bounded.loadOrGenerateChallenge(createOptionsRequest(firstResponse));
+        clock.advance(Duration.ofSeconds(1));
+        MockHttpServletResponse lastResponse = null;
+        for (int i = 0; i < 100; i++) {
+            lastResponse = new MockHttpServletResponse();
+            bounded.loadOrGenerateChallenge(createOptionsRequest(lastResponse));
+        }
+
+        assertThat(bounded.size()).isEqualTo(10);
+        assertThat(bounded.loadChallenge(createRequest(firstResponse))).isNull();
+        assertThat(bounded.loadChallenge(createRequest(lastResponse))).isNotNull();
+    }
+
+    @Test
+    public void saveChallenge_test_with_null() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = createOptionsRequest(response);
+
+        target.saveChallenge(target.generateChallenge(), request);
+        target.saveChallenge(null, request);
+
+        assertThat(target.loadChallenge(request)).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void loadChallenge_test_without_previous_request() {
+        assertThat(target.loadChallenge(new MockHttpServletRequest())).isNull();
+        assertThat(target.loadAndRemoveChallenge(new MockHttpServletRequest())).isNull();
+    }
+
+    private InMemoryChallengeRepository createTarget(int maximumSize, Duration timeToLive) {
+        InMemoryChallengeRepository repository = new InMemoryChallengeRepository(maximumSize, timeToLive);
+        repository.setClock(clock);
+        return repository;
+    }
+
+    private MockHttpServletRequest createOptionsRequest(MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HttpServletResponse.class.getName(), response);
+        return request;
+    }
+
+    private MockHttpServletRequest createRequest(MockHttpServletResponse optionsResponse) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(InMemoryChallengeRepository.DEFAULT_HEADER_NAME, optionsResponse.getHeader(InMemoryChallengeRepository.DEFAULT_HEADER_NAME));
+        return request;
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for PreGeneratedChallengeRepository
+ */
+public class PreGeneratedChallengeRepositoryTest {
+
+    private final PreGeneratedChallengeRepository target = new PreGeneratedChallengeRepository(new HttpSessionChallengeRepository(), 64);
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void generateChallenge_test() {
+        target.refill();
+        assertThat(target.getPoolSize()).isEqualTo(64);
+
+        Set<Challenge> challenges = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            Challenge challenge = target.generateChallenge();
+            assertThat(challenge.getValue()).hasSize(16);
+            challenges.add(challenge);
+        }
+        assertThat(challenges).hasSize(64);
+    }
+
+    @Test
+    public void generateChallenge_with_empty_pool_test() {
+        target.destroy();
+        while (target.getPoolSize() > 0) {
+            target.generateChallenge();
+        }
+
+        Challenge challenge = target.generateChallenge();
+
+        assertThat(challenge).isNotNull();
+        assertThat(challenge.getValue()).hasSize(16);
+    }
+
+    @Test
+    public void refill_test() {
+        target.refill();
+        for (int i = 0; i < 40; i++) {
+            target.generateChallenge();
+        }
+
+        target.refill();
+
+        assertThat(target.getPoolSize()).isEqualTo(64);
+    }
+
+    @Test
+    public void afterPropertiesSet_fills_pool_test() throws InterruptedException {
+        assertThat(target.getPoolSize()).isZero();
+
+        target.afterPropertiesSet();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (target.getPoolSize() < 64 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(target.getPoolSize()).isEqualTo(64);
+    }
+
+    @Test
+    public void pool_size_stays_within_bounds_under_concurrent_refill_test() throws InterruptedException {
+        AtomicBoolean outOfBounds = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    target.generateChallenge();
+                    int size = target.getPoolSize();
+                    if (size < 0 || size > 64) {
+                        outOfBounds.set(true);
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        while (done.getCount() > 0) {
+            target.refill();
+        }
+        done.await();
+
+        assertThat(outOfBounds).isFalse();
+        assertThat(target.getPoolSize()).isBetween(0, 64);
+    }
+
+    @Test
+    public void storage_is_delegated_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        Challenge challenge = target.loadOrGenerateChallenge(request);
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+        assertThat(target.loadAndRemoveChallenge(request)).isEqualTo(challenge);
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test for SignedChallengeRepository
+ */
+public class SignedChallengeRepositoryTest {
+
+    private static final byte[] KEY_1 = createKey((byte) 1);
+    private static final byte[] KEY_2 = createKey((byte) 2);
+
+    private final SignedChallengeRepository target = new SignedChallengeRepository("key1", KEY_1);
+
+    @Test
+    public void saveChallenge_writes_cookie_and_header_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = createOptionsRequest(response);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        Cookie cookie = response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(cookie.getMaxAge()).isEqualTo(300);
+        assertThat(response.getHeader(SignedChallengeRepository.DEFAULT_HEADER_NAME)).isEqualTo(cookie.getValue());
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_from_cookie_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME));
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_from_header_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(SignedChallengeRepository.DEFAULT_HEADER_NAME, response.getHeader(SignedChallengeRepository.DEFAULT_HEADER_NAME));
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_with_tampered_token_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.loadOrGenerateChallenge(createOptionsRequest(response));
+        String token = response.getHeader(SignedChallengeRepository.DEFAULT_HEADER_NAME);
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + target.generateChallenge().toString().hashCode() + "." + parts[2] + "." + parts[3];
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(SignedChallengeRepository.DEFAULT_HEADER_NAME, tampered);
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_with_expired_token_test() {
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(5)), ZoneOffset.UTC));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME));
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_after_key_rotation_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(response));
+        Cookie cookie = response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME);
+
+        target.addKey("key2", KEY_2);
+        target.setSigningKeyId("key2");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+
+        target.removeKey("key1");
+        request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_with_token_signed_by_other_repository_test() {
+        SignedChallengeRepository other = new SignedChallengeRepository("key1", KEY_2);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        other.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME));
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void saveChallenge_test_with_null() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = createOptionsRequest(response);
+
+        target.saveChallenge(target.generateChallenge(), request);
+        target.saveChallenge(null, request);
+
+        assertThat(target.loadChallenge(request)).isNull();
+        assertThat(response.getCookies()[1].getMaxAge()).isZero();
+    }
+
+    @Test
+    public void loadOrGenerateChallenge_issues_fresh_challenge_test() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Challenge first = target.loadOrGenerateChallenge(createOptionsRequest(response));
+
+        MockHttpServletResponse nextResponse = new MockHttpServletResponse();
+        MockHttpServletRequest nextRequest = createOptionsRequest(nextResponse);
+        nextRequest.setCookies(response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME));
+        Challenge second = target.loadOrGenerateChallenge(nextRequest);
+
+        assertThat(second).isNotEqualTo(first);
+        assertThat(target.loadChallenge(nextRequest)).isEqualTo(second);
+    }
+
+    @Test
+    public void saveChallenge_without_response_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThatThrownBy(() -> target.saveChallenge(target.generateChallenge(), request)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void loadAndRemoveChallenge_test() {
+        MockHttpServletResponse optionsResponse = new MockHttpServletResponse();
+        Challenge challenge = target.loadOrGenerateChallenge(createOptionsRequest(optionsResponse));
+        Cookie cookie = optionsResponse.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = createOptionsRequest(response);
+        request.setCookies(cookie);
+        assertThat(target.loadAndRemoveChallenge(request)).isEqualTo(challenge);
+        assertThat(response.getCookie(SignedChallengeRepository.DEFAULT_COOKIE_NAME).getMaxAge()).isZero();
+        assertThat(target.loadChallenge(request)).isNull();
+
+        MockHttpServletRequest requestWithoutResponse = new MockHttpServletRequest();
+        requestWithoutResponse.setCookies(cookie);
+        assertThat(target.loadAndRemoveChallenge(requestWithoutResponse)).isEqualTo(challenge);
+        assertThat(target.loadChallenge(requestWithoutResponse)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_without_previous_request() {
+        assertThat(target.loadChallenge(new MockHttpServletRequest())).isNull();
+    }
+
+    @Test
+    public void loadChallenge_does_not_create_session_test() {
+        MockHttpServletRequest request = createOptionsRequest(new MockHttpServletResponse());
+
+        target.loadOrGenerateChallenge(request);
+
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    private MockHttpServletRequest createOptionsRequest(MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HttpServletResponse.class.getName(), response);
+        return request;
+    }
+
+    private static byte[] createKey(byte value) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, value);
+        return key;
+    }
+}
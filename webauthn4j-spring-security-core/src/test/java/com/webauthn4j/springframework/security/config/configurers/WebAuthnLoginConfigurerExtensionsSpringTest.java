@@ -0,0 +1,228 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.config.configurers;
+
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.springframework.security.DefaultUserVerificationStrategy;
+import com.webauthn4j.springframework.security.UserVerificationStrategy;
+import com.webauthn4j.springframework.security.challenge.ChallengeRepository;
+import com.webauthn4j.springframework.security.credential.InMemoryWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.options.AssertionOptionsProvider;
+import com.webauthn4j.springframework.security.options.AssertionOptionsProviderImpl;
+import com.webauthn4j.springframework.security.options.AttestationOptionsProvider;
+import com.webauthn4j.springframework.security.options.AttestationOptionsProviderImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.anonymous;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Verifies that extensions provided for one options request never leak into the options of another request
+ */
+@RunWith(SpringRunner.class)
+public class WebAuthnLoginConfigurerExtensionsSpringTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    FilterChainProxy springSecurityFilterChain;
+
+    private MockMvc mvc;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders.standaloneSetup()
+                .addFilter(springSecurityFilterChain)
+                .build();
+    }
+
+    @Test
+    public void attestationOptions_extensions_are_isolated_between_sequential_requests_test() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertExtensions("/webauthn/attestation/options", String.valueOf(i));
+        }
+    }
+
+    @Test
+    public void assertionOptions_extensions_are_isolated_between_sequential_requests_test() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertExtensions("/webauthn/assertion/options", String.valueOf(i));
+        }
+    }
+
+    @Test
+    public void options_extensions_are_isolated_between_concurrent_requests_test() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        String tag = thread + "-" + i;
+                        assertExtensions(i % 2 == 0 ? "/webauthn/attestation/options" : "/webauthn/assertion/options", tag);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private void assertExtensions(String path, String tag) throws Exception {
+        String response = mvc.perform(get(path).param("tag", tag).with(anonymous()))
+                .andReturn().getResponse().getContentAsString();
+        JsonNode extensions = objectMapper.readTree(response).get("extensions");
+
+        JsonNode expected = objectMapper.createObjectNode()
+                .put("uvm", true)
+                .put("unknown", true)
+                .put("tag-" + tag, tag);
+        assertThat(extensions).isEqualTo(expected);
+    }
+
+    @Configuration
+    @EnableWebSecurity
+    static class Config {
+
+        @Autowired
+        private ObjectConverter objectConverter;
+
+        @Autowired
+        private AttestationOptionsProvider attestationOptionsProvider;
+
+        @Autowired
+        private AssertionOptionsProvider assertionOptionsProvider;
+
+        @Bean
+        public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+            http.with(WebAuthnLoginConfigurer.webAuthnLogin(), (customizer)->{
+                customizer.objectConverter(objectConverter)
+                        .rpId("example.com")
+                        .attestationOptionsEndpoint()
+                        .attestationOptionsProvider(attestationOptionsProvider)
+                        .extensions()
+                        .uvm(true)
+                        .entry("unknown", true)
+                        .extensionProviders((builder, httpServletRequest) -> {
+                            String tag = httpServletRequest.getParameter("tag");
+                            builder.set("tag-" + tag, tag);
+                        })
+                        .and()
+                        .assertionOptionsEndpoint()
+                        .assertionOptionsProvider(assertionOptionsProvider)
+                        .extensions()
+                        .uvm(true)
+                        .entry("unknown", true)
+                        .extensionProviders((builder, httpServletRequest) -> {
+                            String tag = httpServletRequest.getParameter("tag");
+                            builder.set("tag-" + tag, tag);
+                        })
+                        .and()
+                        .and();
+            });
+
+            // Authorization
+            http.authorizeHttpRequests(authorizeHttpRequestsCustomizer->{
+                authorizeHttpRequestsCustomizer.requestMatchers("/login").permitAll();
+                authorizeHttpRequestsCustomizer.anyRequest().authenticated();
+            });
+
+            return http.build();
+        }
+
+        @Configuration
+        static class BeanConfig {
+
+            @Bean
+            public ObjectConverter objectConverter() {
+                return new ObjectConverter();
+            }
+
+            @Bean
+            public WebAuthnCredentialRecordService webAuthnAuthenticatorService(){
+                return new InMemoryWebAuthnCredentialRecordManager();
+            }
+
+            @Bean
+            public ChallengeRepository challengeRepository() {
+                ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+                when(challengeRepository.loadOrGenerateChallenge(any())).thenReturn(new DefaultChallenge("aFglXMZdQTKD4krvNzJBzA"));
+                return challengeRepository;
+            }
+
+            @Bean
+            public AttestationOptionsProvider attestationOptionsProvider(WebAuthnCredentialRecordService webAuthnCredentialRecordService, ChallengeRepository challengeRepository){
+                return new AttestationOptionsProviderImpl(webAuthnCredentialRecordService, challengeRepository);
+            }
+
+            @Bean
+            public AssertionOptionsProviderImpl assertionOptionsProvider(WebAuthnCredentialRecordService webAuthnCredentialRecordService, ChallengeRepository challengeRepository) {
+                return new AssertionOptionsProviderImpl(webAuthnCredentialRecordService, challengeRepository);
+            }
+
+            @Bean
+            public UserVerificationStrategy userVerificationStrategy(AuthenticationTrustResolver authenticationTrustResolver){
+                return new DefaultUserVerificationStrategy(authenticationTrustResolver);
+            }
+
+            @Bean
+            public AuthenticationTrustResolver authenticationTrustResolver(){
+                return new AuthenticationTrustResolverImpl();
+            }
+
+            @Bean(name = "mvcHandlerMappingIntrospector")
+            public HandlerMappingIntrospector mvcHandlerMappingIntrospector() {
+                return new HandlerMappingIntrospector();
+            }
+
+        }
+
+    }
+}
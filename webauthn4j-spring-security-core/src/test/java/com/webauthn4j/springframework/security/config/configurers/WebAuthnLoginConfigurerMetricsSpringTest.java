@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.config.configurers;
+
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.springframework.security.WebAuthnAuthenticationProvider;
+import com.webauthn4j.springframework.security.WebAuthnProcessingFilter;
+import com.webauthn4j.springframework.security.WebAuthnRegistrationRequestValidator;
+import com.webauthn4j.springframework.security.challenge.ChallengeRepository;
+import com.webauthn4j.springframework.security.credential.InMemoryWebAuthnCredentialRecordManager;
+import com.webauthn4j.springframework.security.credential.WebAuthnCredentialRecordService;
+import com.webauthn4j.springframework.security.endpoint.AttestationOptionsEndpointFilter;
+import com.webauthn4j.springframework.security.metrics.WebAuthnMetrics;
+import com.webauthn4j.springframework.security.server.ServerPropertyProvider;
+import com.webauthn4j.springframework.security.server.ServerPropertyProviderImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
+
+import jakarta.servlet.Filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Verifies that {@link WebAuthnLoginConfigurer#metrics(WebAuthnMetrics)} wires the filters,
+ * the authentication provider and the registration request validator
+ */
+@RunWith(SpringRunner.class)
+public class WebAuthnLoginConfigurerMetricsSpringTest {
+
+    @Autowired
+    FilterChainProxy springSecurityFilterChain;
+
+    @Autowired
+    private WebAuthnMetrics metrics;
+
+    @Autowired
+    private WebAuthnAuthenticationProvider webAuthnAuthenticationProvider;
+
+    @Autowired
+    private WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator;
+
+    @Test
+    public void metrics_is_wired_to_filters_test() {
+        assertThat(getFilter(WebAuthnProcessingFilter.class).getMetrics()).isSameAs(metrics);
+        assertThat(getFilter(AttestationOptionsEndpointFilter.class).getMetrics()).isSameAs(metrics);
+    }
+
+    @Test
+    public void metrics_is_wired_to_authentication_provider_test() {
+        assertThat(webAuthnAuthenticationProvider.getMetrics()).isSameAs(metrics);
+    }
+
+    @Test
+    public void metrics_is_wired_to_registration_request_validator_test() {
+        assertThat(webAuthnRegistrationRequestValidator.getMetrics()).isSameAs(metrics);
+    }
+
+    private <T extends Filter> T getFilter(Class<T> type) {
+        return springSecurityFilterChain.getFilterChains().get(0).getFilters().stream()
+                .filter(type::isInstance).map(type::cast).findFirst().orElse(null);
+    }
+
+    @Configuration
+    @EnableWebSecurity
+    static class Config {
+
+        @Autowired
+        private WebAuthnMetrics metrics;
+
+        @Bean
+        public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+            http.with(WebAuthnLoginConfigurer.webAuthnLogin(), (customizer)-> customizer.metrics(metrics));
+
+            // Authorization
+            http.authorizeHttpRequests(authorizeHttpRequestsCustomizer->{
+                authorizeHttpRequestsCustomizer.requestMatchers("/login").permitAll();
+                authorizeHttpRequestsCustomizer.anyRequest().authenticated();
+            });
+
+            return http.build();
+        }
+
+        @Configuration
+        static class BeanConfig {
+
+            @Bean
+            public WebAuthnMetrics webAuthnMetrics() {
+                return mock(WebAuthnMetrics.class);
+            }
+
+            @Bean
+            public ObjectConverter objectConverter() {
+                return new ObjectConverter();
+            }
+
+            @Bean
+            public WebAuthnManager webAuthnManager() {
+                return WebAuthnManager.createNonStrictWebAuthnManager();
+            }
+
+            @Bean
+            public WebAuthnCredentialRecordService webAuthnAuthenticatorService(){
+                return new InMemoryWebAuthnCredentialRecordManager();
+            }
+
+            @Bean
+            public ChallengeRepository challengeRepository() {
+                ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+                when(challengeRepository.loadOrGenerateChallenge(any())).thenReturn(new DefaultChallenge("aFglXMZdQTKD4krvNzJBzA"));
+                return challengeRepository;
+            }
+
+            @Bean
+            public ServerPropertyProvider serverPropertyProvider(ChallengeRepository challengeRepository) {
+                return new ServerPropertyProviderImpl(challengeRepository);
+            }
+
+            @Bean
+            public WebAuthnAuthenticationProvider webAuthnAuthenticationProvider(WebAuthnCredentialRecordService webAuthnCredentialRecordService, WebAuthnManager webAuthnManager) {
+                return new WebAuthnAuthenticationProvider(webAuthnCredentialRecordService, webAuthnManager);
+            }
+
+            @Bean
+            public WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator(WebAuthnManager webAuthnManager, ServerPropertyProvider serverPropertyProvider) {
+                return new WebAuthnRegistrationRequestValidator(webAuthnManager, serverPropertyProvider);
+            }
+
+            @Bean(name = "mvcHandlerMappingIntrospector")
+            public HandlerMappingIntrospector mvcHandlerMappingIntrospector() {
+                return new HandlerMappingIntrospector();
+            }
+
+        }
+
+    }
+}
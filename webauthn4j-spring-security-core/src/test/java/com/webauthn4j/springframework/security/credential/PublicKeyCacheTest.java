@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.credential;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.test.TestDataUtil;
+import org.junit.Test;
+
+import java.security.PublicKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PublicKeyCacheTest {
+
+    private final PublicKeyCache target = new PublicKeyCache();
+
+    @Test
+    public void wrap_reuses_decoded_public_key_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(TestDataUtil.createAttestedCredentialData());
+
+        PublicKey first = target.wrap(webAuthnCredentialRecord).getAttestedCredentialData().getCOSEKey().getPublicKey();
+        PublicKey second = target.wrap(webAuthnCredentialRecord).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        assertThat(first).isEqualTo(webAuthnCredentialRecord.getAttestedCredentialData().getCOSEKey().getPublicKey());
+        assertThat(second).isSameAs(first);
+        assertThat(target.getHitCount()).isEqualTo(1);
+        assertThat(target.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void wrap_with_changed_cose_key_test() {
+        AttestedCredentialData attestedCredentialData = TestDataUtil.createAttestedCredentialData();
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(attestedCredentialData);
+        target.wrap(webAuthnCredentialRecord).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        COSEKey otherCOSEKey = TestDataUtil.createEC2COSEPublicKey();
+        WebAuthnCredentialRecord reRegistered = createCredentialRecord(new AttestedCredentialData(AAGUID.ZERO, attestedCredentialData.getCredentialId(), otherCOSEKey));
+
+        assertThat(target.wrap(reRegistered).getAttestedCredentialData().getCOSEKey().getPublicKey()).isEqualTo(otherCOSEKey.getPublicKey());
+    }
+
+    @Test
+    public void wrap_preserves_record_type_and_identity_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(TestDataUtil.createAttestedCredentialData());
+        WebAuthnCredentialRecord wrapped = target.wrap(webAuthnCredentialRecord);
+
+        assertThat(wrapped).isInstanceOf(WebAuthnCredentialRecordImpl.class);
+        assertThat(wrapped).isEqualTo(webAuthnCredentialRecord);
+        assertThat(wrapped.getUserPrincipal()).isEqualTo("user");
+        assertThat(wrapped.getAttestedCredentialData().getCredentialId()).isEqualTo(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId());
+        COSEKey coseKey = wrapped.getAttestedCredentialData().getCOSEKey();
+        assertThat(coseKey).isInstanceOf(PublicKeyCache.CachingCOSEKey.class);
+        assertThat(((PublicKeyCache.CachingCOSEKey) coseKey).getDelegate()).isSameAs(webAuthnCredentialRecord.getAttestedCredentialData().getCOSEKey());
+        assertThat(coseKey.hashCode()).isEqualTo(webAuthnCredentialRecord.getAttestedCredentialData().getCOSEKey().hashCode());
+    }
+
+    @Test
+    public void wrap_detaches_counter_update_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(TestDataUtil.createAttestedCredentialData());
+        WebAuthnCredentialRecord wrapped = target.wrap(webAuthnCredentialRecord);
+
+        wrapped.setCounter(10);
+
+        assertThat(webAuthnCredentialRecord.getCounter()).isZero();
+    }
+
+    @Test
+    public void wrap_returns_record_of_other_type_as_is_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = mock(WebAuthnCredentialRecord.class);
+
+        assertThat(target.wrap(webAuthnCredentialRecord)).isSameAs(webAuthnCredentialRecord);
+    }
+
+    @Test
+    public void evict_test() {
+        WebAuthnCredentialRecord webAuthnCredentialRecord = createCredentialRecord(TestDataUtil.createAttestedCredentialData());
+        target.wrap(webAuthnCredentialRecord).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        target.evict(webAuthnCredentialRecord.getAttestedCredentialData().getCredentialId());
+        target.wrap(webAuthnCredentialRecord).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        assertThat(target.getMissCount()).isEqualTo(2);
+    }
+
+    private WebAuthnCredentialRecord createCredentialRecord(AttestedCredentialData attestedCredentialData) {
+        return new WebAuthnCredentialRecordImpl("authenticator", "user", attestedCredentialData, TestDataUtil.createAttestationObjectWithFIDOU2FAttestationStatement().getAttestationStatement(), 0);
+    }
+}
@@ -54,6 +54,9 @@ public class AssertionOptionsEndpointFilterTest {
 
         optionsEndpointFilter.doFilter(request, response, filterChain);
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+        assertThat(response.getContentAsString()).isEqualTo(objectConverter.getJsonConverter().writeValueAsString(assertionOptions));
     }
 
     @Test
@@ -87,6 +90,7 @@ public class AssertionOptionsEndpointFilterTest {
 
         optionsEndpointFilter.doFilter(request, response, filterChain);
         assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MicrometerWebAuthnMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MicrometerWebAuthnMetrics target = new MicrometerWebAuthnMetrics(meterRegistry);
+
+    @Test
+    public void record_success_test() {
+        assertThat(target.record("test", () -> "result")).isEqualTo("result");
+        assertThat(target.record("test", () -> "result")).isEqualTo("result");
+
+        Timer timer = meterRegistry.get(MicrometerWebAuthnMetrics.METER_NAME)
+                .tags("operation", "test", "outcome", "success", "exception", "none").timer();
+        assertThat(timer.count()).isEqualTo(2);
+    }
+
+    @Test
+    public void record_failure_test() {
+        assertThatThrownBy(() -> target.record("test", (Runnable) () -> {
+            throw new BadCredentialsException("bad credentials");
+        })).isInstanceOf(BadCredentialsException.class);
+
+        Timer timer = meterRegistry.get(MicrometerWebAuthnMetrics.METER_NAME)
+                .tags("operation", "test", "outcome", "failure", "exception", "BadCredentialsException").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(meterRegistry.find(MicrometerWebAuthnMetrics.METER_NAME).tag("outcome", "success").timer()).isNull();
+    }
+
+}
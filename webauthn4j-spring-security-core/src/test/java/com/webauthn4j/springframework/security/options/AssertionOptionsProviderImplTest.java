@@ -51,6 +51,7 @@ public class AssertionOptionsProviderImplTest {
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
 
         when(authenticatorService.loadCredentialRecordsByUserPrincipal(any())).thenReturn(authenticators);
+        when(authenticatorService.loadCredentialDescriptorsByUserPrincipal(any())).thenCallRealMethod();
         when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
         when(challengeRepository.loadOrGenerateChallenge(mockRequest)).thenReturn(challenge);
 
@@ -54,6 +54,7 @@ public class AttestationOptionsProviderImplTest {
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
         mockRequest.setServerName("example.com");
         when(authenticatorService.loadCredentialRecordsByUserPrincipal(any())).thenReturn(authenticators);
+        when(authenticatorService.loadCredentialDescriptorsByUserPrincipal(any())).thenCallRealMethod();
         when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
         when(challengeRepository.loadOrGenerateChallenge(mockRequest)).thenReturn(challenge);
 
@@ -85,6 +86,7 @@ public class AttestationOptionsProviderImplTest {
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
         mockRequest.setServerName("example.com");
         when(authenticatorService.loadCredentialRecordsByUserPrincipal(any())).thenThrow(new PrincipalNotFoundException("dummy"));
+        when(authenticatorService.loadCredentialDescriptorsByUserPrincipal(any())).thenCallRealMethod();
         when(challengeRepository.loadOrGenerateChallenge(mockRequest)).thenReturn(challenge);
 
         AttestationOptionsProviderImpl optionsProvider = new AttestationOptionsProviderImpl(rpIdProvider, authenticatorService, challengeRepository);
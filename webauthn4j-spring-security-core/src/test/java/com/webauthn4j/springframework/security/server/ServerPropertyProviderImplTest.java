@@ -27,8 +27,7 @@ import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class ServerPropertyProviderImplTest {
 
@@ -43,7 +42,7 @@ public class ServerPropertyProviderImplTest {
         request.setServerName("origin.example.com");
         request.setServerPort(443);
         Challenge mockChallenge = new DefaultChallenge();
-        when(challengeRepository.loadOrGenerateChallenge(request)).thenReturn(mockChallenge);
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(mockChallenge);
         when(rpIdProvider.provide(request)).thenReturn("rpid.example.com");
 
         ServerProperty serverProperty = target.provide(request);
@@ -53,6 +52,33 @@ public class ServerPropertyProviderImplTest {
         assertThat(serverProperty.getChallenge()).isEqualTo(mockChallenge);
     }
 
+    @Test
+    public void provide_without_saved_challenge_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        Challenge generatedChallenge = new DefaultChallenge();
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(null);
+        when(challengeRepository.generateChallenge()).thenReturn(generatedChallenge);
+        when(rpIdProvider.provide(request)).thenReturn("rpid.example.com");
+
+        ServerProperty serverProperty = target.provide(request);
+
+        assertThat(serverProperty.getChallenge()).isEqualTo(generatedChallenge);
+        verify(challengeRepository, never()).saveChallenge(any(), any());
+    }
+
+    @Test
+    public void provide_memoizes_in_request_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(new DefaultChallenge());
+        when(rpIdProvider.provide(request)).thenReturn("rpid.example.com");
+
+        ServerProperty serverProperty = target.provide(request);
+
+        assertThat(target.provide(request)).isSameAs(serverProperty);
+        assertThat(target.provide(new MockHttpServletRequest())).isNotSameAs(serverProperty);
+        verify(challengeRepository, times(1)).loadAndRemoveChallenge(request);
+    }
+
     @Test
     public void getRpId_without_rpId_and_rpIdProvider_set(){
         MockHttpServletRequest request = new MockHttpServletRequest();
@@ -60,7 +86,7 @@ public class ServerPropertyProviderImplTest {
         request.setServerName("origin.example.com");
         request.setServerPort(443);
         Challenge mockChallenge = new DefaultChallenge();
-        when(challengeRepository.loadOrGenerateChallenge(request)).thenReturn(mockChallenge);
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(mockChallenge);
         ServerPropertyProviderImpl serverPropertyProviderImpl = new ServerPropertyProviderImpl(challengeRepository);
         assertThat(serverPropertyProviderImpl.getRpId(request)).isEqualTo("origin.example.com");
     }
@@ -72,7 +98,7 @@ public class ServerPropertyProviderImplTest {
         request.setServerName("origin.example.com");
         request.setServerPort(443);
         Challenge mockChallenge = new DefaultChallenge();
-        when(challengeRepository.loadOrGenerateChallenge(request)).thenReturn(mockChallenge);
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(mockChallenge);
         ServerPropertyProviderImpl serverPropertyProviderImpl = new ServerPropertyProviderImpl(challengeRepository);
         serverPropertyProviderImpl.setRpId("example.com");
         assertThat(serverPropertyProviderImpl.getRpId(request)).isEqualTo("example.com");
@@ -85,7 +111,7 @@ public class ServerPropertyProviderImplTest {
         request.setServerName("origin.example.com");
         request.setServerPort(443);
         Challenge mockChallenge = new DefaultChallenge();
-        when(challengeRepository.loadOrGenerateChallenge(request)).thenReturn(mockChallenge);
+        when(challengeRepository.loadAndRemoveChallenge(request)).thenReturn(mockChallenge);
         ServerPropertyProviderImpl serverPropertyProviderImpl = new ServerPropertyProviderImpl(challengeRepository);
         serverPropertyProviderImpl.setRpIdProvider(httpServletRequest -> "example.com");
         assertThat(serverPropertyProviderImpl.getRpId(request)).isEqualTo("example.com");
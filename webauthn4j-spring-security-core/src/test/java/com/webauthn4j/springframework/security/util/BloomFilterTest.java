@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util;
+
+import com.webauthn4j.springframework.security.util.internal.BloomFilter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BloomFilterTest {
+
+    @Test
+    public void mightContain_test() {
+        BloomFilter target = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            target.put(toBytes(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(target.mightContain(toBytes(i))).isTrue();
+        }
+    }
+
+    @Test
+    public void false_positive_probability_test() {
+        BloomFilter target = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            target.put(toBytes(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (target.mightContain(toBytes(i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2000);
+    }
+
+    @Test
+    public void sizing_test() {
+        BloomFilter target = new BloomFilter(1000, 0.01);
+        // about 9.6 bits and 7 hash functions per insertion for 1%
+        assertThat(target.getBitCount()).isBetween(9585L, 9585L + 64);
+        assertThat(target.getHashCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void constructor_with_invalid_falsePositiveProbability_test() {
+        assertThatThrownBy(() -> new BloomFilter(1000, 1.0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] toBytes(int value) {
+        return ByteBuffer.allocate(16).putInt(value).array();
+    }
+
+}
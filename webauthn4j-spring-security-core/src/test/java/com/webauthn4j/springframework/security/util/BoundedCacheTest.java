@@ -0,0 +1,181 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util;
+
+import com.webauthn4j.springframework.security.util.internal.BoundedCache;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void get_with_loader_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(10, Duration.ZERO);
+        assertThat(target.get("key", key -> "value")).isEqualTo("value");
+        assertThat(target.get("key", key -> "another")).isEqualTo("value");
+        assertThat(target.getHitCount()).isEqualTo(1);
+        assertThat(target.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_with_loader_returning_null_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(10, Duration.ZERO);
+        assertThat(target.get("key", key -> null)).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void least_recently_used_entry_is_evicted_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(2, Duration.ZERO);
+        target.put("a", "a");
+        target.put("b", "b");
+        target.get("a");
+        target.put("c", "c");
+        assertThat(target.getIfPresent("a")).isEqualTo("a");
+        assertThat(target.getIfPresent("b")).isNull();
+        assertThat(target.getIfPresent("c")).isEqualTo("c");
+        assertThat(target.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void size_is_bounded_beyond_eviction_sample_test() {
+        BoundedCache<Integer, Integer> target = new BoundedCache<>(100, Duration.ZERO);
+        for (int i = 0; i < 1000; i++) {
+            target.put(i, i);
+            target.get(0);
+        }
+        assertThat(target.size()).isEqualTo(100);
+        assertThat(target.getEvictionCount()).isEqualTo(900);
+        // a frequently read entry survives the sampled eviction
+        assertThat(target.getIfPresent(0)).isEqualTo(0);
+    }
+
+    @Test
+    public void eviction_samples_random_positions_test() {
+        BoundedCache<Integer, Integer> target = new BoundedCache<>(1000, Duration.ZERO);
+        for (int i = 0; i < 1000; i++) {
+            target.put(scramble(i), i);
+        }
+        for (int i = 0; i < 500; i++) {
+            target.get(scramble(i));
+        }
+        for (int i = 1000; i < 1100; i++) {
+            target.put(scramble(i), i);
+        }
+
+        int recentlyUsed = 0;
+        for (int i = 0; i < 500; i++) {
+            if (target.getIfPresent(scramble(i)) != null) {
+                recentlyUsed++;
+            }
+        }
+        // sampling the same first buckets would evict recently used entries once the old ones there are gone
+        assertThat(recentlyUsed).isGreaterThanOrEqualTo(490);
+    }
+
+    @Test
+    public void load_invalidated_during_load_is_not_cached_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(10, Duration.ZERO);
+        assertThat(target.get("key", key -> {
+            target.invalidate(key);
+            return "stale";
+        })).isEqualTo("stale");
+        assertThat(target.getIfPresent("key")).isNull();
+
+        target.put("another", "cached");
+        assertThat(target.get("key", key -> {
+            target.invalidateLoads(key);
+            return "stale";
+        })).isEqualTo("stale");
+        assertThat(target.getIfPresent("key")).isNull();
+        assertThat(target.getIfPresent("another")).isEqualTo("cached");
+
+        assertThat(target.get("key", key -> "fresh")).isEqualTo("fresh");
+        assertThat(target.getIfPresent("key")).isEqualTo("fresh");
+    }
+
+    @Test
+    public void concurrent_access_test() throws Exception {
+        BoundedCache<Integer, Integer> target = new BoundedCache<>(64, Duration.ZERO);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        int key = (i * 7 + offset) % 256;
+                        Integer value = target.get(key, k -> k * 2);
+                        assertThat(value).isEqualTo(key * 2);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertThat(target.size()).isLessThanOrEqualTo(64);
+        assertThat(target.getHitCount() + target.getMissCount()).isEqualTo(80000);
+    }
+
+    @Test
+    public void expired_entry_is_not_returned_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(10, Duration.ofSeconds(10));
+        Instant now = Instant.parse("2019-01-01T00:00:00Z");
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        target.put("key", "value");
+        target.setClock(Clock.fixed(now.plusSeconds(9), ZoneOffset.UTC));
+        assertThat(target.get("key")).isEqualTo("value");
+        target.setClock(Clock.fixed(now.plusSeconds(10), ZoneOffset.UTC));
+        assertThat(target.get("key")).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void invalidate_test() {
+        BoundedCache<String, String> target = new BoundedCache<>(10, Duration.ZERO);
+        target.put("a", "a");
+        target.put("b", "b");
+        target.invalidate("a");
+        assertThat(target.getIfPresent("a")).isNull();
+        target.invalidateAll();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void constructor_with_invalid_maximumSize_test() {
+        assertThatThrownBy(() -> new BoundedCache<String, String>(0, Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int scramble(int i) {
+        return i * 0x9E3779B9;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util;
+
+import com.webauthn4j.springframework.security.util.internal.ExactPathRequestMatcher;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExactPathRequestMatcherTest {
+
+    private final ExactPathRequestMatcher target = new ExactPathRequestMatcher("/webauthn/attestation/options", HttpMethod.GET);
+
+    @Test
+    public void matches_test() {
+        assertThat(target.matches(new MockHttpServletRequest("GET", "/webauthn/attestation/options"))).isTrue();
+    }
+
+    @Test
+    public void matches_with_context_path_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/webauthn/attestation/options");
+        request.setContextPath("/app");
+        assertThat(target.matches(request)).isTrue();
+    }
+
+    @Test
+    public void matches_with_unmatched_path_test() {
+        assertThat(target.matches(new MockHttpServletRequest("GET", "/other/webauthn/attestation/options"))).isFalse();
+        assertThat(target.matches(new MockHttpServletRequest("GET", "/webauthn/attestation/options/other"))).isFalse();
+        assertThat(target.matches(new MockHttpServletRequest("GET", "/webauthn/attestation"))).isFalse();
+    }
+
+    @Test
+    public void matches_with_unmatched_method_test() {
+        assertThat(target.matches(new MockHttpServletRequest("POST", "/webauthn/attestation/options"))).isFalse();
+    }
+
+    @Test
+    public void matches_any_method_test() {
+        ExactPathRequestMatcher matcher = new ExactPathRequestMatcher("/webauthn/attestation/options");
+        assertThat(matcher.matches(new MockHttpServletRequest("POST", "/webauthn/attestation/options"))).isTrue();
+    }
+
+}
@@ -22,10 +22,13 @@ import com.webauthn4j.util.exception.WebAuthnException;
 import org.junit.Test;
 import org.springframework.security.authentication.AuthenticationServiceException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 
 public class ExceptionUtilTest {
 
@@ -63,6 +66,124 @@ public class ExceptionUtilTest {
         }
     }
 
+    @Test
+    public void wrapWithAuthenticationException_with_subclass_test() {
+        WebAuthnException exception = new com.webauthn4j.verifier.exception.BadSignatureException("dummy") {
+        };
+        assertThat(ExceptionUtil.wrapWithAuthenticationException(exception)).isInstanceOf(BadSignatureException.class).hasMessage("dummy").hasCause(exception);
+    }
+
+    @Test
+    public void wrapWithAuthenticationException_matches_instanceof_chain_test() {
+        List<WebAuthnException> exceptions = new ArrayList<>();
+        for (Class<? extends WebAuthnException> type : List.of(
+                com.webauthn4j.verifier.exception.BadAaguidException.class,
+                com.webauthn4j.verifier.exception.BadAlgorithmException.class,
+                com.webauthn4j.verifier.exception.BadAttestationStatementException.class,
+                com.webauthn4j.verifier.exception.KeyDescriptionValidationException.class,
+                com.webauthn4j.verifier.exception.BadChallengeException.class,
+                com.webauthn4j.verifier.exception.BadOriginException.class,
+                com.webauthn4j.verifier.exception.BadRpIdException.class,
+                com.webauthn4j.verifier.exception.BadSignatureException.class,
+                com.webauthn4j.metadata.exception.BadStatusException.class,
+                com.webauthn4j.verifier.exception.CertificateException.class,
+                com.webauthn4j.verifier.exception.ConstraintViolationException.class,
+                com.webauthn4j.verifier.exception.MaliciousCounterValueException.class,
+                com.webauthn4j.verifier.exception.InconsistentClientDataTypeException.class,
+                com.webauthn4j.verifier.exception.MissingChallengeException.class,
+                com.webauthn4j.verifier.exception.PublicKeyMismatchException.class,
+                com.webauthn4j.verifier.exception.SelfAttestationProhibitedException.class,
+                com.webauthn4j.verifier.exception.TokenBindingException.class,
+                com.webauthn4j.verifier.exception.TrustAnchorNotFoundException.class,
+                com.webauthn4j.verifier.exception.UnexpectedExtensionException.class,
+                com.webauthn4j.verifier.exception.UserNotPresentException.class,
+                com.webauthn4j.verifier.exception.UserNotVerifiedException.class,
+                com.webauthn4j.verifier.exception.VerificationException.class,
+                com.webauthn4j.converter.exception.DataConversionException.class,
+                WebAuthnException.class)) {
+            // mocks are instances of generated subclasses, which resolve through the superclass lookup
+            exceptions.add(mock(type));
+        }
+        exceptions.add(new UnknownValidationException("dummy"));
+
+        for (WebAuthnException exception : exceptions) {
+            assertThat(ExceptionUtil.wrapWithAuthenticationException(exception).getClass())
+                    .as(exception.getClass().getName())
+                    .isEqualTo(wrapByInstanceofChain(exception));
+        }
+    }
+
+    @Test
+    public void wrapWithAuthenticationException_without_stack_trace_test() {
+        RuntimeException validationException = ExceptionUtil.wrapWithAuthenticationException(new com.webauthn4j.verifier.exception.BadChallengeException("dummy"), false);
+        RuntimeException dataConversionException = ExceptionUtil.wrapWithAuthenticationException(new com.webauthn4j.converter.exception.DataConversionException("dummy"), false);
+        assertThat(validationException.getStackTrace()).isEmpty();
+        assertThat(dataConversionException.getStackTrace()).isEmpty();
+        assertThat(validationException.getCause().getStackTrace()).isNotEmpty();
+
+        assertThat(ExceptionUtil.isStackTraceSuppressed()).isFalse();
+        assertThat(ExceptionUtil.wrapWithAuthenticationException(new com.webauthn4j.verifier.exception.BadChallengeException("dummy")).getStackTrace()).isNotEmpty();
+        assertThat(new BadChallengeException("dummy").getStackTrace()).isNotEmpty();
+    }
+
+    /**
+     * The instanceof chain which the translation table replaced
+     */
+    @SuppressWarnings("squid:S3776")
+    private static Class<?> wrapByInstanceofChain(WebAuthnException e) {
+        if (e instanceof com.webauthn4j.verifier.exception.BadAaguidException) {
+            return BadAaguidException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadAlgorithmException) {
+            return BadAlgorithmException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadAttestationStatementException) {
+            if (e instanceof com.webauthn4j.verifier.exception.KeyDescriptionValidationException) {
+                return KeyDescriptionValidationException.class;
+            } else {
+                return BadAttestationStatementException.class;
+            }
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadChallengeException) {
+            return BadChallengeException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadOriginException) {
+            return BadOriginException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadRpIdException) {
+            return BadRpIdException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.BadSignatureException) {
+            return BadSignatureException.class;
+        } else if (e instanceof com.webauthn4j.metadata.exception.BadStatusException) {
+            return BadStatusException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.CertificateException) {
+            return CertificateException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.ConstraintViolationException) {
+            return ConstraintViolationException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.MaliciousCounterValueException) {
+            return MaliciousCounterValueException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.InconsistentClientDataTypeException) {
+            return InconsistentClientDataTypeException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.MissingChallengeException) {
+            return MissingChallengeException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.PublicKeyMismatchException) {
+            return PublicKeyMismatchException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.SelfAttestationProhibitedException) {
+            return SelfAttestationProhibitedException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.TokenBindingException) {
+            return TokenBindingException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.TrustAnchorNotFoundException) {
+            return TrustAnchorNotFoundException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.UnexpectedExtensionException) {
+            return UnexpectedExtensionException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.UserNotPresentException) {
+            return UserNotPresentException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.UserNotVerifiedException) {
+            return UserNotVerifiedException.class;
+        } else if (e instanceof com.webauthn4j.verifier.exception.VerificationException) {
+            return ValidationException.class;
+        } else if (e instanceof com.webauthn4j.converter.exception.DataConversionException) {
+            return DataConversionException.class;
+        } else {
+            return AuthenticationServiceException.class;
+        }
+    }
+
     static class UnknownValidationException extends com.webauthn4j.verifier.exception.VerificationException {
 
         UnknownValidationException(String message) {
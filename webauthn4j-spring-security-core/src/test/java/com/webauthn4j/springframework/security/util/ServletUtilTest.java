@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.util;
+
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.springframework.security.util.internal.ServletUtil;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServletUtilTest {
+
+    @Test
+    public void getOrigin_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setScheme("https");
+        request.setServerName("example.com");
+        request.setServerPort(8443);
+
+        Origin origin = ServletUtil.getOrigin(request);
+
+        assertThat(origin).isEqualTo(new Origin("https://example.com:8443"));
+        assertThat(ServletUtil.getOrigin(request)).isSameAs(origin);
+    }
+
+    @Test
+    public void getOrigin_with_different_port_test() {
+        MockHttpServletRequest request1 = new MockHttpServletRequest();
+        request1.setScheme("https");
+        request1.setServerName("example.com");
+        request1.setServerPort(443);
+        MockHttpServletRequest request2 = new MockHttpServletRequest();
+        request2.setScheme("https");
+        request2.setServerName("example.com");
+        request2.setServerPort(8443);
+
+        assertThat(ServletUtil.getOrigin(request1)).isEqualTo(new Origin("https://example.com"));
+        assertThat(ServletUtil.getOrigin(request2)).isEqualTo(new Origin("https://example.com:8443"));
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metadata;
+
+import com.webauthn4j.metadata.CachingMetadataBLOBProvider;
+import com.webauthn4j.metadata.MetadataBLOBProvider;
+import com.webauthn4j.metadata.data.MetadataBLOB;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetadataBLOBProvider} decorator which refreshes the MetadataBLOB on a background thread, ahead of its
+ * nextUpdate date, so that requests are served from the current snapshot and never pay for a download or a parse.
+ * <p>
+ * The delegate is called only on the refresh thread, except when no snapshot has been loaded yet. A refresh is
+ * scheduled {@code refreshAhead} before the start of the nextUpdate date (UTC), within the minimum and maximum refresh
+ * intervals. A failed refresh keeps the current snapshot, and is retried with an exponential backoff, capped so that
+ * the retries are not delayed past the nextUpdate date of the current snapshot while it is in the future. Once it has
+ * passed, the backoff grows up to the maximum retry delay. Snapshots are swapped atomically.
+ * Refreshes are scheduled from {@link #afterPropertiesSet()}.
+ * <p>
+ * The delegate must fetch the MetadataBLOB without caching it, as a caching delegate keeps returning the same
+ * MetadataBLOB until its nextUpdate date has passed, which defeats the refresh ahead. The cache of a
+ * {@link ResourceMetadataBLOBProvider} delegate is bypassed on refresh. Other {@link CachingMetadataBLOBProvider}
+ * delegates are only refreshed once their nextUpdate date has passed.
+ */
+public class BackgroundRefreshingMetadataBLOBProvider implements MetadataBLOBProvider, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofDays(1);
+    private static final Duration DEFAULT_MINIMUM_REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_MAXIMUM_REFRESH_INTERVAL = Duration.ofDays(1);
+    private static final Duration DEFAULT_INITIAL_RETRY_DELAY = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_MAXIMUM_RETRY_DELAY = Duration.ofHours(1);
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final MetadataBLOBProvider delegate;
+    private final ScheduledExecutorService executorService;
+    private volatile Snapshot snapshot;
+    private int consecutiveFailureCount;
+    private int retryCount;
+
+    private Duration refreshAhead = DEFAULT_REFRESH_AHEAD;
+    private Duration minimumRefreshInterval = DEFAULT_MINIMUM_REFRESH_INTERVAL;
+    private Duration maximumRefreshInterval = DEFAULT_MAXIMUM_REFRESH_INTERVAL;
+    private Duration initialRetryDelay = DEFAULT_INITIAL_RETRY_DELAY;
+    private Duration maximumRetryDelay = DEFAULT_MAXIMUM_RETRY_DELAY;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public BackgroundRefreshingMetadataBLOBProvider(MetadataBLOBProvider delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+        if (delegate instanceof CachingMetadataBLOBProvider && !(delegate instanceof ResourceMetadataBLOBProvider)) {
+            logger.warn("The delegate caches the MetadataBLOB until its nextUpdate date, so it cannot be refreshed ahead");
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-metadata-refresher-");
+        threadFactory.setDaemon(true);
+        this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Loads the first snapshot, and schedules the refreshes. If the load fails, it is retried in the background.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        refresh();
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public MetadataBLOB provide() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(delegate.provide(), clock.instant());
+                    snapshot = current;
+                }
+            }
+        }
+        return current.metadataBLOB;
+    }
+
+    /**
+     * Returns the age of the snapshot served, or null if none has been loaded
+     *
+     * @return age of the snapshot
+     */
+    public Duration getSnapshotAge() {
+        Snapshot current = snapshot;
+        return current == null ? null : Duration.between(current.loadedAt, clock.instant());
+    }
+
+    /**
+     * Returns the number of refreshes failed since the last successful one
+     *
+     * @return consecutive failure count
+     */
+    public synchronized int getConsecutiveFailureCount() {
+        return consecutiveFailureCount;
+    }
+
+    /**
+     * Loads a snapshot from the delegate, and schedules the next refresh. A MetadataBLOB whose nextUpdate has not
+     * advanced, e.g. because the next one is not published yet, is not swapped in, and the refresh is retried with
+     * backoff.
+     */
+    void refresh() {
+        Duration delay;
+        try {
+            MetadataBLOB metadataBLOB = fetch();
+            Assert.notNull(metadataBLOB, "delegate returned null");
+            synchronized (this) {
+                consecutiveFailureCount = 0;
+                Snapshot current = snapshot;
+                if (current == null || isNewer(metadataBLOB, current.metadataBLOB)) {
+                    snapshot = new Snapshot(metadataBLOB, clock.instant());
+                    retryCount = 0;
+                    delay = computeRefreshDelay(metadataBLOB);
+                } else {
+                    delay = computeRetryDelay(++retryCount, current.metadataBLOB);
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                consecutiveFailureCount++;
+                Snapshot current = snapshot;
+                delay = computeRetryDelay(++retryCount, current == null ? null : current.metadataBLOB);
+            }
+            logger.warn("Failed to refresh MetadataBLOB, retrying in " + delay, e);
+        }
+        schedule(delay);
+    }
+
+    /**
+     * Fetches the MetadataBLOB from the delegate, bypassing the cache of a {@link ResourceMetadataBLOBProvider}
+     */
+    private MetadataBLOB fetch() {
+        if (delegate instanceof ResourceMetadataBLOBProvider) {
+            return ((ResourceMetadataBLOBProvider) delegate).doProvide();
+        }
+        return delegate.provide();
+    }
+
+    private static boolean isNewer(MetadataBLOB metadataBLOB, MetadataBLOB current) {
+        if (metadataBLOB == current) {
+            return false;
+        }
+        LocalDate nextUpdate = metadataBLOB.getPayload().getNextUpdate();
+        LocalDate currentNextUpdate = current.getPayload().getNextUpdate();
+        return nextUpdate == null || currentNextUpdate == null || nextUpdate.isAfter(currentNextUpdate);
+    }
+
+    Duration computeRefreshDelay(MetadataBLOB metadataBLOB) {
+        LocalDate nextUpdate = metadataBLOB.getPayload().getNextUpdate();
+        Duration delay = nextUpdate == null ?
+                maximumRefreshInterval :
+                Duration.between(clock.instant(), nextUpdate.atStartOfDay(ZoneOffset.UTC).toInstant()).minus(refreshAhead);
+        if (delay.compareTo(minimumRefreshInterval) < 0) {
+            return minimumRefreshInterval;
+        }
+        return delay.compareTo(maximumRefreshInterval) > 0 ? maximumRefreshInterval : delay;
+    }
+
+    /**
+     * Computes the retry delay, capped to the start of the nextUpdate date (UTC) of the current MetadataBLOB while it
+     * is in the future, but not below the minimum refresh interval
+     */
+    Duration computeRetryDelay(int failureCount, MetadataBLOB current) {
+        Duration delay = computeRetryDelay(failureCount);
+        LocalDate nextUpdate = current == null ? null : current.getPayload().getNextUpdate();
+        if (nextUpdate == null) {
+            return delay;
+        }
+        Duration untilNextUpdate = Duration.between(clock.instant(), nextUpdate.atStartOfDay(ZoneOffset.UTC).toInstant());
+        if (untilNextUpdate.isNegative() || untilNextUpdate.isZero()) {
+            // the nextUpdate date has passed, so the delegate keeps failing; back off without a cap
+            return delay;
+        }
+        if (untilNextUpdate.compareTo(minimumRefreshInterval) < 0) {
+            untilNextUpdate = minimumRefreshInterval;
+        }
+        return untilNextUpdate.compareTo(delay) < 0 ? untilNextUpdate : delay;
+    }
+
+    Duration computeRetryDelay(int failureCount) {
+        Duration delay = initialRetryDelay;
+        for (int i = 1; i < failureCount && delay.compareTo(maximumRetryDelay) < 0; i++) {
+            delay = delay.multipliedBy(2);
+        }
+        return delay.compareTo(maximumRetryDelay) > 0 ? maximumRetryDelay : delay;
+    }
+
+    private void schedule(Duration delay) {
+        try {
+            executorService.schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shut down; the current snapshot keeps being served
+            logger.debug("MetadataBLOB refresher is shut down");
+        }
+    }
+
+    public Duration getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Sets how long before the start of the nextUpdate date the MetadataBLOB is refreshed
+     *
+     * @param refreshAhead refresh ahead duration
+     */
+    public void setRefreshAhead(Duration refreshAhead) {
+        Assert.notNull(refreshAhead, "refreshAhead must not be null");
+        this.refreshAhead = refreshAhead;
+    }
+
+    public Duration getMinimumRefreshInterval() {
+        return minimumRefreshInterval;
+    }
+
+    public void setMinimumRefreshInterval(Duration minimumRefreshInterval) {
+        Assert.notNull(minimumRefreshInterval, "minimumRefreshInterval must not be null");
+        this.minimumRefreshInterval = minimumRefreshInterval;
+    }
+
+    public Duration getMaximumRefreshInterval() {
+        return maximumRefreshInterval;
+    }
+
+    public void setMaximumRefreshInterval(Duration maximumRefreshInterval) {
+        Assert.notNull(maximumRefreshInterval, "maximumRefreshInterval must not be null");
+        this.maximumRefreshInterval = maximumRefreshInterval;
+    }
+
+    public Duration getInitialRetryDelay() {
+        return initialRetryDelay;
+    }
+
+    public void setInitialRetryDelay(Duration initialRetryDelay) {
+        Assert.notNull(initialRetryDelay, "initialRetryDelay must not be null");
+        this.initialRetryDelay = initialRetryDelay;
+    }
+
+    public Duration getMaximumRetryDelay() {
+        return maximumRetryDelay;
+    }
+
+    public void setMaximumRetryDelay(Duration maximumRetryDelay) {
+        Assert.notNull(maximumRetryDelay, "maximumRetryDelay must not be null");
+        this.maximumRetryDelay = maximumRetryDelay;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    private static class Snapshot {
+
+        private final MetadataBLOB metadataBLOB;
+        private final Instant loadedAt;
+
+        Snapshot(MetadataBLOB metadataBLOB, Instant loadedAt) {
+            this.metadataBLOB = metadataBLOB;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
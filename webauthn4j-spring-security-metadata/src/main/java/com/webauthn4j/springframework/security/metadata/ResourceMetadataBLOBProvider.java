@@ -24,10 +24,22 @@ import com.webauthn4j.util.AssertUtil;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 
-import java.io.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
+/**
+ * A {@link CachingMetadataBLOBProvider} which loads a MetadataBLOB from a Spring {@link Resource}.
+ * <p>
+ * The resource is read into a single byte array, through a {@link FileChannel} sized to the file when it resides in
+ * the file system, and line breaks are removed in place before it is decoded as UTF-8, so that a multi-megabyte BLOB
+ * is not copied through a reader, per-line strings and a joining buffer.
+ */
 public class ResourceMetadataBLOBProvider extends CachingMetadataBLOBProvider implements InitializingBean {
 
     // ~ Instance fields
@@ -65,13 +77,45 @@ public class ResourceMetadataBLOBProvider extends CachingMetadataBLOBProvider im
 
     @Override
     protected MetadataBLOB doProvide() {
-        try (InputStream inputStream = resource.getInputStream()) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-            Stream<String> lines = new BufferedReader(inputStreamReader).lines();
-            String string = lines.collect(Collectors.joining());
-            return metadataBLOBFactory.parse(string);
+        try {
+            byte[] bytes = readAllBytes(resource);
+            int length = removeLineBreaks(bytes);
+            return metadataBLOBFactory.parse(new String(bytes, 0, length, StandardCharsets.UTF_8));
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to load a MetadataBLOB file", e);
         }
     }
+
+    static byte[] readAllBytes(Resource resource) throws IOException {
+        if (resource.isFile()) {
+            try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < Integer.MAX_VALUE) {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                        // read until the buffer is full or the end of the file
+                    }
+                    return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+                }
+            }
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * Removes CR and LF bytes in place, as the BLOB may be wrapped or terminated by a line break
+     *
+     * @return length of the remaining bytes
+     */
+    static int removeLineBreaks(byte[] bytes) {
+        int length = 0;
+        for (byte b : bytes) {
+            if (b != '\r' && b != '\n') {
+                bytes[length++] = b;
+            }
+        }
+        return length;
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metadata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.webauthn4j.converter.jackson.WebAuthnJSONModule;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+import com.webauthn4j.metadata.converter.jackson.WebAuthnMetadataJSONModule;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetadataStatementsProvider} decorator which persists the metadata statements provided by its delegate to a
+ * local CBOR snapshot file, so that an application starts serving them without re-reading and re-verifying the source.
+ * <p>
+ * On initialization, a snapshot whose integrity check passes and which is younger than the maximum snapshot age is
+ * loaded and served, and the delegate is called on a background thread; its result replaces the snapshot, in memory
+ * and on disk, once it is available. If the delegate fails, the snapshot keeps being served. Without a valid snapshot,
+ * the delegate is called synchronously. The delegate is then called again every refresh interval, so that new
+ * status reports and root certificates provided by the source are picked up without a restart.
+ * <p>
+ * The snapshot file is a trust input: the attestation root certificates it contains are trusted without the signature
+ * check of the source. Without a snapshot key, the integrity check is a SHA-256 digest, which only detects corruption,
+ * so the file must be protected from modification like the application itself. With a snapshot key, the check is an
+ * HMAC-SHA256, and a file written by anyone without the key is rejected.
+ * <p>
+ * Snapshot file layout: the {@code WAMS} magic, a format version byte, the creation time in epoch seconds (8 bytes),
+ * the SHA-256 digest or HMAC-SHA256 of the creation time and the payload, and the payload, the CBOR array of the
+ * metadata statements.
+ */
+public class SnapshotMetadataStatementsProvider implements MetadataStatementsProvider, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final byte[] MAGIC = "WAMS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte FORMAT_VERSION = 2;
+    private static final int CREATED_AT_LENGTH = 8;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int DIGEST_OFFSET = MAGIC.length + 1 + CREATED_AT_LENGTH;
+    private static final int HEADER_LENGTH = DIGEST_OFFSET + DIGEST_LENGTH;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofHours(1);
+    private static final Duration DEFAULT_MAXIMUM_SNAPSHOT_AGE = Duration.ofDays(7);
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final MetadataStatementsProvider delegate;
+    private final Path snapshotFile;
+    private final ObjectMapper cborMapper;
+    private final ScheduledExecutorService executorService;
+    private volatile List<MetadataStatement> metadataStatements;
+    private SecretKeySpec snapshotKey;
+    private Duration refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private Duration maximumSnapshotAge = DEFAULT_MAXIMUM_SNAPSHOT_AGE;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public SnapshotMetadataStatementsProvider(MetadataStatementsProvider delegate, ObjectConverter objectConverter, Path snapshotFile) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        Assert.notNull(snapshotFile, "snapshotFile must not be null");
+        this.delegate = delegate;
+        this.snapshotFile = snapshotFile;
+        this.cborMapper = new ObjectMapper(new CBORFactory());
+        this.cborMapper.registerModule(new WebAuthnJSONModule(objectConverter));
+        this.cborMapper.registerModule(new WebAuthnMetadataJSONModule());
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-metadata-snapshot-");
+        threadFactory.setDaemon(true);
+        this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Serves the snapshot if valid, or the result of the delegate otherwise, and schedules the refreshes
+     */
+    @Override
+    public void afterPropertiesSet() {
+        List<MetadataStatement> snapshot = readSnapshot();
+        long initialDelay = 0;
+        if (snapshot == null) {
+            refresh();
+            initialDelay = refreshInterval.toMillis();
+        } else {
+            metadataStatements = snapshot;
+        }
+        try {
+            executorService.scheduleWithFixedDelay(this::refreshQuietly, initialDelay, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Metadata statements snapshot refresher is shut down");
+        }
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public @NonNull List<MetadataStatement> provide() {
+        List<MetadataStatement> current = metadataStatements;
+        if (current == null) {
+            synchronized (this) {
+                current = metadataStatements;
+                if (current == null) {
+                    refresh();
+                    current = metadataStatements;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Calls the delegate, and replaces the served metadata statements and the snapshot file with its result
+     */
+    public void refresh() {
+        List<MetadataStatement> provided = Collections.unmodifiableList(delegate.provide());
+        metadataStatements = provided;
+        try {
+            writeSnapshot(provided);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write the metadata statements snapshot " + snapshotFile, e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh the metadata statements from the source, the current ones are kept", e);
+        }
+    }
+
+    List<MetadataStatement> readSnapshot() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(snapshotFile);
+            if (bytes.length < HEADER_LENGTH
+                    || !Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                    || bytes[MAGIC.length] != FORMAT_VERSION) {
+                logger.warn("Ignoring the metadata statements snapshot " + snapshotFile + " of unknown format");
+                return null;
+            }
+            byte[] digest = Arrays.copyOfRange(bytes, DIGEST_OFFSET, HEADER_LENGTH);
+            if (!MessageDigest.isEqual(digest, computeDigest(bytes))) {
+                logger.warn("Ignoring the metadata statements snapshot " + snapshotFile + " failing its integrity check");
+                return null;
+            }
+            Instant createdAt = Instant.ofEpochSecond(ByteBuffer.wrap(bytes, MAGIC.length + 1, CREATED_AT_LENGTH).getLong());
+            if (!createdAt.plus(maximumSnapshotAge).isAfter(clock.instant())) {
+                logger.warn("Ignoring the metadata statements snapshot " + snapshotFile + " created at " + createdAt + ", older than " + maximumSnapshotAge);
+                return null;
+            }
+            MetadataStatement[] statements = cborMapper.readValue(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, MetadataStatement[].class);
+            return Collections.unmodifiableList(Arrays.asList(statements));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read the metadata statements snapshot " + snapshotFile, e);
+            return null;
+        }
+    }
+
+    void writeSnapshot(List<MetadataStatement> statements) throws IOException {
+        byte[] payload = cborMapper.writeValueAsBytes(statements.toArray(new MetadataStatement[0]));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(HEADER_LENGTH + payload.length);
+        outputStream.writeBytes(MAGIC);
+        outputStream.write(FORMAT_VERSION);
+        outputStream.writeBytes(ByteBuffer.allocate(CREATED_AT_LENGTH).putLong(clock.instant().getEpochSecond()).array());
+        outputStream.writeBytes(new byte[DIGEST_LENGTH]);
+        outputStream.writeBytes(payload);
+        byte[] bytes = outputStream.toByteArray();
+        byte[] digest = computeDigest(bytes);
+        System.arraycopy(digest, 0, bytes, DIGEST_OFFSET, DIGEST_LENGTH);
+
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, bytes);
+            try {
+                Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the interval between two calls of the delegate, which refresh the served metadata statements and the
+     * snapshot file
+     *
+     * @param refreshInterval refresh interval
+     */
+    public void setRefreshInterval(Duration refreshInterval) {
+        Assert.notNull(refreshInterval, "refreshInterval must not be null");
+        Assert.isTrue(!refreshInterval.isNegative() && !refreshInterval.isZero(), "refreshInterval must be positive");
+        this.refreshInterval = refreshInterval;
+    }
+
+    public Duration getMaximumSnapshotAge() {
+        return maximumSnapshotAge;
+    }
+
+    /**
+     * Sets the maximum age of a snapshot loaded on initialization. An older snapshot is ignored, and the delegate is
+     * called synchronously.
+     *
+     * @param maximumSnapshotAge maximum snapshot age
+     */
+    public void setMaximumSnapshotAge(Duration maximumSnapshotAge) {
+        Assert.notNull(maximumSnapshotAge, "maximumSnapshotAge must not be null");
+        Assert.isTrue(!maximumSnapshotAge.isNegative(), "maximumSnapshotAge must not be negative");
+        this.maximumSnapshotAge = maximumSnapshotAge;
+    }
+
+    /**
+     * Sets the key of the HMAC-SHA256 protecting the snapshot file. Without a key, the file is only protected against
+     * corruption.
+     *
+     * @param snapshotKey HMAC key, at least 32 bytes
+     */
+    public void setSnapshotKey(byte[] snapshotKey) {
+        Assert.notNull(snapshotKey, "snapshotKey must not be null");
+        Assert.isTrue(snapshotKey.length >= 32, "snapshotKey must be at least 32 bytes");
+        this.snapshotKey = new SecretKeySpec(snapshotKey, MAC_ALGORITHM);
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    /**
+     * Computes the SHA-256 digest, or the HMAC-SHA256 if a snapshot key is set, of the creation time and the payload
+     */
+    private byte[] computeDigest(byte[] bytes) {
+        try {
+            if (snapshotKey != null) {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(snapshotKey);
+                mac.update(bytes, MAGIC.length + 1, CREATED_AT_LENGTH);
+                mac.update(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+                return mac.doFinal();
+            }
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(bytes, MAGIC.length + 1, CREATED_AT_LENGTH);
+            messageDigest.update(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            return messageDigest.digest();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
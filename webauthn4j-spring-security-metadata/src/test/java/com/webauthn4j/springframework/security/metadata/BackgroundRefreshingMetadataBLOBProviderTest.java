@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metadata;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.metadata.MetadataBLOBProvider;
+import com.webauthn4j.metadata.data.MetadataBLOB;
+import com.webauthn4j.metadata.data.MetadataBLOBPayload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class BackgroundRefreshingMetadataBLOBProviderTest {
+
+    private final Instant now = Instant.parse("2024-01-01T00:00:00Z");
+    private final MetadataBLOBProvider delegate = mock(MetadataBLOBProvider.class);
+    private BackgroundRefreshingMetadataBLOBProvider target;
+
+    @Before
+    public void setup() {
+        target = new BackgroundRefreshingMetadataBLOBProvider(delegate);
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void provide_serves_snapshot_test() {
+        MetadataBLOB metadataBLOB = createMetadataBLOB(LocalDate.of(2024, 2, 1));
+        when(delegate.provide()).thenReturn(metadataBLOB);
+        target.afterPropertiesSet();
+
+        assertThat(target.provide()).isSameAs(metadataBLOB);
+        assertThat(target.provide()).isSameAs(metadataBLOB);
+        assertThat(target.getSnapshotAge()).isEqualTo(Duration.ZERO);
+        verify(delegate, times(1)).provide();
+    }
+
+    @Test
+    public void refresh_failure_keeps_snapshot_test() {
+        MetadataBLOB metadataBLOB = createMetadataBLOB(LocalDate.of(2024, 2, 1));
+        when(delegate.provide()).thenReturn(metadataBLOB).thenThrow(new IllegalStateException("unavailable"));
+        target.refresh();
+        target.refresh();
+
+        assertThat(target.provide()).isSameAs(metadataBLOB);
+        assertThat(target.getConsecutiveFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void refresh_swaps_newer_snapshot_only_test() {
+        MetadataBLOB first = createMetadataBLOB(LocalDate.of(2024, 2, 1));
+        MetadataBLOB unchanged = createMetadataBLOB(LocalDate.of(2024, 2, 1));
+        MetadataBLOB newer = createMetadataBLOB(LocalDate.of(2024, 3, 1));
+        when(delegate.provide()).thenReturn(first, unchanged, newer);
+
+        target.refresh();
+        target.refresh();
+        assertThat(target.provide()).isSameAs(first);
+        target.refresh();
+        assertThat(target.provide()).isSameAs(newer);
+    }
+
+    @Test
+    public void refresh_bypasses_caching_delegate_test() {
+        LocalDate nextUpdate = LocalDate.now(ZoneOffset.UTC).plusDays(30);
+        MetadataBLOB cached = createMetadataBLOB(nextUpdate);
+        MetadataBLOB first = createMetadataBLOB(nextUpdate.plusDays(1));
+        MetadataBLOB second = createMetadataBLOB(nextUpdate.plusDays(2));
+        Iterator<MetadataBLOB> metadataBLOBs = Arrays.asList(cached, first, second).iterator();
+        ResourceMetadataBLOBProvider cachingDelegate = new ResourceMetadataBLOBProvider(new ObjectConverter()) {
+            @Override
+            protected MetadataBLOB doProvide() {
+                return metadataBLOBs.next();
+            }
+        };
+        assertThat(cachingDelegate.provide()).isSameAs(cached);
+
+        BackgroundRefreshingMetadataBLOBProvider refreshingProvider = new BackgroundRefreshingMetadataBLOBProvider(cachingDelegate);
+        try {
+            refreshingProvider.refresh();
+            assertThat(refreshingProvider.provide()).isSameAs(first);
+            refreshingProvider.refresh();
+            assertThat(refreshingProvider.provide()).isSameAs(second);
+            assertThat(cachingDelegate.provide()).isSameAs(cached);
+        } finally {
+            refreshingProvider.destroy();
+        }
+    }
+
+    @Test
+    public void computeRefreshDelay_test() {
+        MetadataBLOB metadataBLOB = createMetadataBLOB(LocalDate.of(2024, 1, 11));
+        assertThat(target.computeRefreshDelay(metadataBLOB)).isEqualTo(Duration.ofDays(1));
+        target.setMaximumRefreshInterval(Duration.ofDays(30));
+        assertThat(target.computeRefreshDelay(metadataBLOB)).isEqualTo(Duration.ofDays(9));
+        assertThat(target.computeRefreshDelay(createMetadataBLOB(LocalDate.of(2023, 12, 1)))).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void computeRetryDelay_test() {
+        assertThat(target.computeRetryDelay(1)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(target.computeRetryDelay(3)).isEqualTo(Duration.ofMinutes(4));
+        assertThat(target.computeRetryDelay(100)).isEqualTo(Duration.ofHours(1));
+    }
+
+    @Test
+    public void computeRetryDelay_capped_to_nextUpdate_test() {
+        assertThat(target.computeRetryDelay(100, createMetadataBLOB(LocalDate.of(2024, 2, 1)))).isEqualTo(Duration.ofHours(1));
+        assertThat(target.computeRetryDelay(100, null)).isEqualTo(Duration.ofHours(1));
+
+        target.setClock(Clock.fixed(Instant.parse("2023-12-31T23:30:00Z"), ZoneOffset.UTC));
+        assertThat(target.computeRetryDelay(100, createMetadataBLOB(LocalDate.of(2024, 1, 1)))).isEqualTo(Duration.ofMinutes(30));
+        target.setClock(Clock.fixed(Instant.parse("2023-12-31T23:59:30Z"), ZoneOffset.UTC));
+        assertThat(target.computeRetryDelay(100, createMetadataBLOB(LocalDate.of(2024, 1, 1)))).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void computeRetryDelay_after_nextUpdate_backs_off_test() {
+        target.setClock(Clock.fixed(Instant.parse("2024-01-03T00:00:00Z"), ZoneOffset.UTC));
+        MetadataBLOB expired = createMetadataBLOB(LocalDate.of(2024, 1, 1));
+
+        assertThat(target.computeRetryDelay(1, expired)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(target.computeRetryDelay(3, expired)).isEqualTo(Duration.ofMinutes(4));
+        assertThat(target.computeRetryDelay(100, expired)).isEqualTo(Duration.ofHours(1));
+    }
+
+    private MetadataBLOB createMetadataBLOB(LocalDate nextUpdate) {
+        MetadataBLOBPayload payload = mock(MetadataBLOBPayload.class);
+        when(payload.getNextUpdate()).thenReturn(nextUpdate);
+        MetadataBLOB metadataBLOB = mock(MetadataBLOB.class);
+        when(metadataBLOB.getPayload()).thenReturn(payload);
+        return metadataBLOB;
+    }
+
+}
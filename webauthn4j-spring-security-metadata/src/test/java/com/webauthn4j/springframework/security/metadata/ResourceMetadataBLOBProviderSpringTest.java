@@ -25,13 +25,18 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -63,6 +68,34 @@ public class ResourceMetadataBLOBProviderSpringTest {
         assertThatThrownBy(provider::provide).isInstanceOf(UncheckedIOException.class);
     }
 
+    @Test
+    public void readAllBytes_from_file_test() throws IOException {
+        byte[] expected = resourceLoader.getResource("classpath:metadata/blob.jwt").getInputStream().readAllBytes();
+        File file = File.createTempFile("blob", ".jwt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), expected);
+
+        assertThat(ResourceMetadataBLOBProvider.readAllBytes(new FileSystemResource(file))).isEqualTo(expected);
+        assertThat(ResourceMetadataBLOBProvider.readAllBytes(new ByteArrayResource(expected))).isEqualTo(expected);
+    }
+
+    @Test
+    public void provide_with_line_breaks_test() throws IOException {
+        String blob = new String(resourceLoader.getResource("classpath:metadata/blob.jwt").getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        String wrapped = blob.substring(0, 1000) + "\r\n" + blob.substring(1000) + "\n";
+        ResourceMetadataBLOBProvider provider = new ResourceMetadataBLOBProvider(new Config().objectConverter);
+        provider.setResource(new ByteArrayResource(wrapped.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(provider.provide()).isNotNull();
+    }
+
+    @Test
+    public void removeLineBreaks_test() {
+        byte[] bytes = "ab\r\ncd\n".getBytes(StandardCharsets.UTF_8);
+        int length = ResourceMetadataBLOBProvider.removeLineBreaks(bytes);
+        assertThat(new String(bytes, 0, length, StandardCharsets.UTF_8)).isEqualTo("abcd");
+    }
+
     @Configuration
     public static class Config {
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.webauthn4j.springframework.security.metadata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+import com.webauthn4j.metadata.converter.jackson.WebAuthnMetadataJSONModule;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class SnapshotMetadataStatementsProviderTest {
+
+    private ObjectConverter objectConverter;
+    private List<MetadataStatement> expected;
+    private Path snapshotFile;
+    private SnapshotMetadataStatementsProvider target;
+
+    @Before
+    public void setup() throws IOException {
+        ObjectMapper jsonMapper = new ObjectMapper();
+        jsonMapper.registerModule(new WebAuthnMetadataJSONModule());
+        objectConverter = new ObjectConverter(jsonMapper, new ObjectMapper(new CBORFactory()));
+        ResourcesMetadataStatementsProvider resourcesMetadataStatementsProvider = new ResourcesMetadataStatementsProvider(objectConverter);
+        resourcesMetadataStatementsProvider.setResources(Collections.singletonList(new ClassPathResource("metadata/JsonMetadataItem_fido2.json")));
+        expected = resourcesMetadataStatementsProvider.provide();
+        snapshotFile = Files.createTempDirectory("metadata").resolve("statements.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        if (target != null) {
+            target.destroy();
+        }
+    }
+
+    @Test
+    public void afterPropertiesSet_without_snapshot_test() {
+        target = new SnapshotMetadataStatementsProvider(() -> expected, objectConverter, snapshotFile);
+        target.afterPropertiesSet();
+
+        assertThat(target.provide()).isEqualTo(expected);
+        assertThat(snapshotFile).exists();
+    }
+
+    @Test
+    public void afterPropertiesSet_with_snapshot_test() throws IOException {
+        writeSnapshot();
+        MetadataStatementsProvider delegate = mock(MetadataStatementsProvider.class);
+        when(delegate.provide()).thenThrow(new IllegalStateException("source unavailable"));
+        target = new SnapshotMetadataStatementsProvider(delegate, objectConverter, snapshotFile);
+        target.afterPropertiesSet();
+
+        assertThat(target.provide()).isEqualTo(expected);
+    }
+
+    @Test
+    public void afterPropertiesSet_with_corrupted_snapshot_test() throws IOException {
+        writeSnapshot();
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshotFile, bytes);
+        MetadataStatementsProvider delegate = mock(MetadataStatementsProvider.class);
+        when(delegate.provide()).thenReturn(expected);
+        target = new SnapshotMetadataStatementsProvider(delegate, objectConverter, snapshotFile);
+
+        assertThat(target.readSnapshot()).isNull();
+        target.afterPropertiesSet();
+        assertThat(target.provide()).isEqualTo(expected);
+        verify(delegate).provide();
+    }
+
+    @Test
+    public void readSnapshot_older_than_maximumSnapshotAge_test() throws IOException {
+        writeSnapshot();
+        target = new SnapshotMetadataStatementsProvider(() -> expected, objectConverter, snapshotFile);
+        target.setMaximumSnapshotAge(Duration.ofDays(7));
+
+        target.setClock(Clock.offset(Clock.systemUTC(), Duration.ofDays(6)));
+        assertThat(target.readSnapshot()).isEqualTo(expected);
+        target.setClock(Clock.fixed(Instant.now().plus(Duration.ofDays(8)), ZoneOffset.UTC));
+        assertThat(target.readSnapshot()).isNull();
+    }
+
+    @Test
+    public void readSnapshot_with_snapshotKey_test() throws IOException {
+        byte[] snapshotKey = new byte[32];
+        SnapshotMetadataStatementsProvider writer = new SnapshotMetadataStatementsProvider(() -> expected, objectConverter, snapshotFile);
+        writer.setSnapshotKey(snapshotKey);
+        writer.writeSnapshot(expected);
+        writer.destroy();
+
+        target = new SnapshotMetadataStatementsProvider(() -> expected, objectConverter, snapshotFile);
+        assertThat(target.readSnapshot()).isNull();
+        target.setSnapshotKey(snapshotKey);
+        assertThat(target.readSnapshot()).isEqualTo(expected);
+        snapshotKey[0] = 1;
+        target.setSnapshotKey(snapshotKey);
+        assertThat(target.readSnapshot()).isNull();
+    }
+
+    @Test
+    public void refresh_is_scheduled_periodically_test() throws IOException {
+        writeSnapshot();
+        MetadataStatementsProvider delegate = mock(MetadataStatementsProvider.class);
+        when(delegate.provide()).thenReturn(expected, Collections.emptyList());
+        target = new SnapshotMetadataStatementsProvider(delegate, objectConverter, snapshotFile);
+        target.setRefreshInterval(Duration.ofMillis(10));
+        target.afterPropertiesSet();
+
+        verify(delegate, timeout(5000).atLeast(3)).provide();
+        assertThat(target.provide()).isEmpty();
+    }
+
+    private void writeSnapshot() throws IOException {
+        SnapshotMetadataStatementsProvider writer = new SnapshotMetadataStatementsProvider(() -> expected, objectConverter, snapshotFile);
+        writer.writeSnapshot(expected);
+        writer.destroy();
+    }
+
+}